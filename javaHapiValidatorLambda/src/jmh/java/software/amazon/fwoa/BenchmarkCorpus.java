@@ -0,0 +1,84 @@
+/*
+ * Copyright Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package software.amazon.fwoa;
+
+/**
+ * Resources used by the validation benchmarks. Large resources are generated so that their size can be tuned without adding fixtures.
+ */
+final class BenchmarkCorpus {
+    static final String SYNTHEA_PATIENT = Handler.SOME_SYNTHEA_PATIENT;
+
+    static final String US_CORE_PATIENT = "{\"resourceType\":\"Patient\",\"meta\":{\"profile\":[\"http://hl7.org/fhir/us/core/StructureDefinition/us-core-patient\"]},"
+        + "\"identifier\":[{\"system\":\"http://hospital.smarthealthit.org\",\"value\":\"1032702\"}],"
+        + "\"name\":[{\"family\":\"Shaw\",\"given\":[\"Amy\",\"V.\"]}],\"gender\":\"female\",\"birthDate\":\"1987-02-20\"}";
+
+    static final String LARGE_OBSERVATION = largeObservation(200);
+
+    static final String LARGE_BUNDLE = largeBundle(100);
+
+    static final String INVALID_JSON = "{a:<>}}}";
+
+    // A large resource claiming a profile that is not loaded, rejected by the structural precheck
+    static final String UNKNOWN_PROFILE_OBSERVATION = LARGE_OBSERVATION.replaceFirst("\\{\"resourceType\":\"Observation\",",
+        "{\"resourceType\":\"Observation\",\"meta\":{\"profile\":[\"http://example.org/fhir/StructureDefinition/unknown\"]},");
+
+    private BenchmarkCorpus() {
+    }
+
+    static String get(String name) {
+        switch (name) {
+            case "syntheaPatient":
+                return SYNTHEA_PATIENT;
+            case "usCorePatient":
+                return US_CORE_PATIENT;
+            case "largeObservation":
+                return LARGE_OBSERVATION;
+            case "largeBundle":
+                return LARGE_BUNDLE;
+            case "invalidJson":
+                return INVALID_JSON;
+            case "unknownProfileObservation":
+                return UNKNOWN_PROFILE_OBSERVATION;
+            default:
+                throw new IllegalArgumentException("Unknown corpus resource " + name);
+        }
+    }
+
+    static String largeObservation(int components) {
+        StringBuilder sb = new StringBuilder("{\"resourceType\":\"Observation\",\"status\":\"final\",")
+            .append("\"category\":[{\"coding\":[{\"system\":\"http://terminology.hl7.org/CodeSystem/observation-category\",\"code\":\"laboratory\"}]}],")
+            .append("\"code\":{\"coding\":[{\"system\":\"http://loinc.org\",\"code\":\"24323-8\",\"display\":\"Comprehensive metabolic panel\"}]},")
+            .append("\"subject\":{\"reference\":\"Patient/example\"},\"effectiveDateTime\":\"2021-04-01T10:00:00Z\",\"component\":[");
+        for (int i = 0; i < components; i++) {
+            if (i > 0) {
+                sb.append(',');
+            }
+            sb.append("{\"code\":{\"coding\":[{\"system\":\"http://loinc.org\",\"code\":\"2345-7\",\"display\":\"Glucose\"}]},")
+                .append("\"valueQuantity\":{\"value\":").append(70 + i % 50)
+                .append(",\"unit\":\"mg/dL\",\"system\":\"http://unitsofmeasure.org\",\"code\":\"mg/dL\"}}");
+        }
+        return sb.append("]}").toString();
+    }
+
+    static String largeBundle(int entries) {
+        StringBuilder sb = new StringBuilder("{\"resourceType\":\"Bundle\",\"type\":\"transaction\",\"entry\":[");
+        for (int i = 0; i < entries; i++) {
+            if (i > 0) {
+                sb.append(',');
+            }
+            String resource = i % 2 == 0 ? SYNTHEA_PATIENT : largeObservation(5);
+            String resourceType = i % 2 == 0 ? "Patient" : "Observation";
+            sb.append("{\"fullUrl\":\"urn:uuid:00000000-0000-0000-0000-").append(String.format("%012d", i)).append("\",")
+                .append("\"resource\":").append(resource).append(',')
+                .append("\"request\":{\"method\":\"POST\",\"url\":\"").append(resourceType).append("\"}}");
+        }
+        return sb.append("]}").toString();
+    }
+
+    static String implementationGuidesFolder(String fhirVersion) {
+        return Validator.FHIR_R4.equals(fhirVersion) ? "testImplementationGuides-r4" : "testImplementationGuides-stu3";
+    }
+}
@@ -0,0 +1,92 @@
+/*
+ * Copyright Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package software.amazon.fwoa;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Cost of the Lambda event decoding and response encoding of {@link Handler} and {@link StreamHandler}.
+ * The String based handler is modeled with the Jackson databind serialization the Lambda runtime uses for POJO handlers,
+ * both handlers get the event as a stream over the payload bytes like the runtime provides it.
+ * The "envelope" benchmarks leave out the validation, which is identical for both handlers and dominates the end to end latency.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class HandlerBenchmark {
+    private static final ObjectMapper OBJECT_MAPPER = new ObjectMapper();
+
+    @Param({"syntheaPatient", "largeBundle"})
+    public String resource;
+
+    private Validator validator;
+    private StreamHandler streamHandler;
+    private byte[] event;
+    private ValidatorResponse response;
+
+    @Setup(Level.Trial)
+    public void setup() throws IOException {
+        validator = new Validator(Validator.FHIR_R4, BenchmarkCorpus.implementationGuidesFolder(Validator.FHIR_R4));
+        streamHandler = new StreamHandler(validator);
+        // The caller sends the resource encoded as a JSON string
+        event = OBJECT_MAPPER.writeValueAsBytes(BenchmarkCorpus.get(resource));
+        response = validator.validate(BenchmarkCorpus.get(resource));
+    }
+
+    @Benchmark
+    public byte[] requestHandlerEnvelope() throws IOException {
+        String resourceAsJsonText = OBJECT_MAPPER.readValue(new ByteArrayInputStream(event), String.class);
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        OBJECT_MAPPER.writeValue(output, resourceAsJsonText.isEmpty() ? null : response);
+        return output.toByteArray();
+    }
+
+    @Benchmark
+    public byte[] streamHandlerEnvelope() throws IOException {
+        String resourceAsJsonText = StreamHandler.readEvent(new ByteArrayInputStream(event));
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        StreamHandler.writeResponse(resourceAsJsonText.isEmpty() ? null : response, output);
+        return output.toByteArray();
+    }
+
+    @Benchmark
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    public byte[] requestHandler() throws IOException {
+        String resourceAsJsonText = OBJECT_MAPPER.readValue(new ByteArrayInputStream(event), String.class);
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        OBJECT_MAPPER.writeValue(output, validator.validate(resourceAsJsonText));
+        return output.toByteArray();
+    }
+
+    @Benchmark
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    public byte[] streamHandler() throws IOException {
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        streamHandler.handleRequest(new ByteArrayInputStream(event), output, null);
+        return output.toByteArray();
+    }
+}
@@ -0,0 +1,59 @@
+/*
+ * Copyright Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package software.amazon.fwoa;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import ca.uhn.fhir.context.FhirContext;
+
+/**
+ * Loading of the test implementation guides alone, without building the rest of the validator.
+ */
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 10)
+@Fork(1)
+@State(Scope.Benchmark)
+public class IgLoadingBenchmark {
+
+    @Param({Validator.FHIR_R4, Validator.FHIR_STU3})
+    public String fhirVersion;
+
+    @Param({"1", "4"})
+    public int threads;
+
+    private IgLoader igLoader;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        FhirContext ctx = Validator.FHIR_R4.equals(fhirVersion) ? FhirContext.forR4() : FhirContext.forDstu3();
+        igLoader = new IgLoader(ctx, fhirVersion, BenchmarkCorpus.implementationGuidesFolder(fhirVersion), threads);
+    }
+
+    @Benchmark
+    public IgSnapshot loadIgs() {
+        return igLoader.load();
+    }
+
+    @Benchmark
+    public LazyIgValidationSupport indexIgsLazily() {
+        return igLoader.loadLazily();
+    }
+}
@@ -0,0 +1,78 @@
+/*
+ * Copyright Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package software.amazon.fwoa;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Throughput and latency distribution of Validator.validate on a warm validator, per kind of resource.
+ * Run with "-prof gc" (the default of the benchmark profile) to get the allocation rate per operation.
+ */
+@Warmup(iterations = 5, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ValidateBenchmark {
+
+    @Param({Validator.FHIR_R4, Validator.FHIR_STU3})
+    public String fhirVersion;
+
+    @Param({"syntheaPatient", "usCorePatient", "largeObservation", "largeBundle", "invalidJson", "unknownProfileObservation"})
+    public String resource;
+
+    // Measures the overhead of the metrics instrumentation, the sink itself discards the metrics
+    @Param({"false", "true"})
+    public boolean metrics;
+
+    @Param({"10000", "0"})
+    public long terminologyCacheMaximumSize;
+
+    @Param({"default", "failFast"})
+    public String options;
+
+    private ValidationOptions validationOptions;
+
+    private Validator validator;
+    private String resourceAsJsonText;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        ValidatorConfig config = ValidatorConfig.builder()
+            .metricsSink(metrics ? m -> { } : ValidationMetricsSink.NOOP)
+            .terminologyCacheMaximumSize(terminologyCacheMaximumSize)
+            .build();
+        validator = new Validator(fhirVersion, BenchmarkCorpus.implementationGuidesFolder(fhirVersion), config);
+        resourceAsJsonText = BenchmarkCorpus.get(resource);
+        validationOptions = "failFast".equals(options) ? ValidationOptions.FAIL_FAST : ValidationOptions.DEFAULT;
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.Throughput)
+    @OutputTimeUnit(TimeUnit.SECONDS)
+    public ValidatorResponse throughput() {
+        return validator.validate(resourceAsJsonText, validationOptions);
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.SampleTime)
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    public ValidatorResponse latency() {
+        return validator.validate(resourceAsJsonText, validationOptions);
+    }
+}
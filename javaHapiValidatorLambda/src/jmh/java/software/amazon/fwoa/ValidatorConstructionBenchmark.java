@@ -0,0 +1,44 @@
+/*
+ * Copyright Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package software.amazon.fwoa;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Cold construction of a Validator, as on a Lambda cold start. Every fork measures a single construction in a fresh JVM.
+ */
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 0)
+@Measurement(iterations = 1)
+@Fork(5)
+@State(Scope.Benchmark)
+public class ValidatorConstructionBenchmark {
+
+    @Param({Validator.FHIR_R4, Validator.FHIR_STU3})
+    public String fhirVersion;
+
+    @Benchmark
+    public Validator newValidator() {
+        return new Validator(fhirVersion, BenchmarkCorpus.implementationGuidesFolder(fhirVersion));
+    }
+
+    @Benchmark
+    public ValidatorResponse newValidatorAndFirstValidation() {
+        return new Validator(fhirVersion, BenchmarkCorpus.implementationGuidesFolder(fhirVersion)).validate(BenchmarkCorpus.SYNTHEA_PATIENT);
+    }
+}
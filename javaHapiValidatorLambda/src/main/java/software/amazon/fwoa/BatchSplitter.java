@@ -0,0 +1,115 @@
+/*
+ * Copyright Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package software.amazon.fwoa;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParseException;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+
+/**
+ * Splits the input of {@link Validator#validateBatch} into the text of each resource with a strict streaming parser.
+ * Each resource is returned as its original substring, so that it is validated exactly as {@link Validator#validate(String)} would validate it.
+ */
+class BatchSplitter {
+    private static final JsonFactory JSON_FACTORY = new JsonFactory();
+
+    private BatchSplitter() {
+    }
+
+    /**
+     * Returns the elements of a JSON array, the resources of the entries of a Bundle, or the whole text for any other JSON value.
+     * A Bundle entry without resource, e.g. a DELETE, is returned as null.
+     *
+     * @throws IOException if the text is not strictly valid JSON
+     */
+    static List<String> split(String text) throws IOException {
+        try (JsonParser parser = JSON_FACTORY.createParser(text)) {
+            JsonToken root = parser.nextToken();
+            if (root == null) {
+                throw new JsonParseException(parser, "Empty batch");
+            }
+            List<String> resources;
+            if (root == JsonToken.START_ARRAY) {
+                resources = new ArrayList<>();
+                while (parser.nextToken() != JsonToken.END_ARRAY) {
+                    resources.add(value(parser, text));
+                }
+            } else if (root == JsonToken.START_OBJECT) {
+                resources = bundleResources(parser, text);
+                if (resources == null) {
+                    resources = Collections.singletonList(text);
+                }
+            } else {
+                parser.skipChildren();
+                resources = Collections.singletonList(text);
+            }
+            if (parser.nextToken() != null) {
+                throw new JsonParseException(parser, "Unexpected content after the batch");
+            }
+            return resources;
+        }
+    }
+
+    /**
+     * Reads the fields of the root object. Returns the entry resources if it is a Bundle, null otherwise.
+     * The resourceType can come after the entries.
+     */
+    private static List<String> bundleResources(JsonParser parser, String text) throws IOException {
+        boolean isBundle = false;
+        List<String> resources = new ArrayList<>();
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String name = parser.getCurrentName();
+            JsonToken token = parser.nextToken();
+            if ("resourceType".equals(name)) {
+                isBundle = token == JsonToken.VALUE_STRING && "Bundle".equals(parser.getText());
+            } else if ("entry".equals(name) && token == JsonToken.START_ARRAY) {
+                resources.clear();
+                while (parser.nextToken() != JsonToken.END_ARRAY) {
+                    resources.add(entryResource(parser, text));
+                }
+            } else {
+                parser.skipChildren();
+            }
+        }
+        return isBundle ? resources : null;
+    }
+
+    private static String entryResource(JsonParser parser, String text) throws IOException {
+        if (parser.currentToken() != JsonToken.START_OBJECT) {
+            // not an entry, validated as is and reported as invalid JSON
+            return value(parser, text);
+        }
+        String resource = null;
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String name = parser.getCurrentName();
+            parser.nextToken();
+            if ("resource".equals(name)) {
+                resource = value(parser, text);
+            } else {
+                parser.skipChildren();
+            }
+        }
+        return resource;
+    }
+
+    /**
+     * The original text of the value at the current token. The parser is left on the last token of the value.
+     */
+    private static String value(JsonParser parser, String text) throws IOException {
+        int start = (int) parser.getTokenLocation().getCharOffset();
+        parser.skipChildren();
+        // the end of a string value is only known once its text is read
+        parser.finishToken();
+        int end = (int) parser.getCurrentLocation().getCharOffset();
+        return text.substring(start, end);
+    }
+}
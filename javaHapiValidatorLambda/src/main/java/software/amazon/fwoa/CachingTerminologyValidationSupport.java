@@ -0,0 +1,168 @@
+/*
+ * Copyright Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package software.amazon.fwoa;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Optional;
+import java.util.function.Supplier;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheStats;
+
+import org.apache.commons.codec.digest.DigestUtils;
+
+import org.hl7.fhir.common.hapi.validation.support.BaseValidationSupportWrapper;
+import org.hl7.fhir.instance.model.api.IBaseResource;
+import org.hl7.fhir.instance.model.api.IPrimitiveType;
+
+import ca.uhn.fhir.context.FhirContext;
+import ca.uhn.fhir.context.support.ConceptValidationOptions;
+import ca.uhn.fhir.context.support.IValidationSupport;
+import ca.uhn.fhir.context.support.ValidationSupportContext;
+import ca.uhn.fhir.context.support.ValueSetExpansionOptions;
+import ca.uhn.fhir.util.FhirTerser;
+
+/**
+ * Wraps the validation support chain and memoizes the terminology operations: code validation, ValueSet expansion and code lookup.
+ * The terminology modules of the chain are in-memory and deterministic, so a cached result is the result the chain would compute again.
+ * ValueSets passed as resources are keyed by their canonical URL and a hash of their content, ValueSets without a URL are not cached.
+ * The URL alone is not enough: the cache is shared by every validation, and a ValueSet of the validated resource, e.g. a contained one
+ * or a submitted ValueSet, can reuse the canonical URL of an implementation guide ValueSet with a different content.
+ * Everything else is passed through.
+ * <p>
+ * The ValidationSupportContext is not part of the keys. It only gives access to the root of the chain for nested calls, and a
+ * validator always calls this wrapper as the root of its own fixed chain, so every call of a given key resolves through the same modules.
+ * Cached expansions are mutable resources shared by the validation threads, every caller gets its own copy.
+ */
+class CachingTerminologyValidationSupport extends BaseValidationSupportWrapper {
+    private final Cache<List<Object>, Optional<Object>> cache;
+    private final FhirTerser terser;
+
+    CachingTerminologyValidationSupport(FhirContext ctx, IValidationSupport wrap, long maximumSize) {
+        super(ctx, wrap);
+        this.cache = CacheBuilder.newBuilder()
+            .maximumSize(maximumSize)
+            .recordStats()
+            .build();
+        this.terser = ctx.newTerser();
+    }
+
+    CacheStats stats() {
+        return cache.stats();
+    }
+
+    long size() {
+        return cache.size();
+    }
+
+    @Override
+    public boolean isCodeSystemSupported(ValidationSupportContext theValidationSupportContext, String theSystem) {
+        return load(() -> super.isCodeSystemSupported(theValidationSupportContext, theSystem),
+            "isCodeSystemSupported", theSystem);
+    }
+
+    @Override
+    public boolean isValueSetSupported(ValidationSupportContext theValidationSupportContext, String theValueSetUrl) {
+        return load(() -> super.isValueSetSupported(theValidationSupportContext, theValueSetUrl),
+            "isValueSetSupported", theValueSetUrl);
+    }
+
+    @Override
+    public CodeValidationResult validateCode(ValidationSupportContext theValidationSupportContext, ConceptValidationOptions theOptions,
+                                             String theCodeSystem, String theCode, String theDisplay, String theValueSetUrl) {
+        return load(() -> super.validateCode(theValidationSupportContext, theOptions, theCodeSystem, theCode, theDisplay, theValueSetUrl),
+            "validateCode", key(theOptions), theCodeSystem, theCode, theDisplay, theValueSetUrl);
+    }
+
+    @Override
+    public CodeValidationResult validateCodeInValueSet(ValidationSupportContext theValidationSupportContext, ConceptValidationOptions theOptions,
+                                                       String theCodeSystem, String theCode, String theDisplay, IBaseResource theValueSet) {
+        Supplier<CodeValidationResult> validateCodeInValueSet =
+            () -> super.validateCodeInValueSet(theValidationSupportContext, theOptions, theCodeSystem, theCode, theDisplay, theValueSet);
+        List<String> valueSetKey = key(theValueSet);
+        if (valueSetKey == null) {
+            return validateCodeInValueSet.get();
+        }
+        return load(validateCodeInValueSet, "validateCodeInValueSet", key(theOptions), theCodeSystem, theCode, theDisplay, valueSetKey);
+    }
+
+    @Override
+    public LookupCodeResult lookupCode(ValidationSupportContext theValidationSupportContext, String theSystem, String theCode) {
+        return load(() -> super.lookupCode(theValidationSupportContext, theSystem, theCode),
+            "lookupCode", theSystem, theCode);
+    }
+
+    @Override
+    public ValueSetExpansionOutcome expandValueSet(ValidationSupportContext theValidationSupportContext, ValueSetExpansionOptions theExpansionOptions,
+                                                   IBaseResource theValueSetToExpand) {
+        Supplier<ValueSetExpansionOutcome> expandValueSet =
+            () -> super.expandValueSet(theValidationSupportContext, theExpansionOptions, theValueSetToExpand);
+        List<String> valueSetKey = key(theValueSetToExpand);
+        if (valueSetKey == null) {
+            return expandValueSet.get();
+        }
+        ValueSetExpansionOutcome expansion = load(expandValueSet, "expandValueSet", key(theExpansionOptions), valueSetKey);
+        if (expansion == null || expansion.getValueSet() == null) {
+            return expansion;
+        }
+        return new ValueSetExpansionOutcome(copy(expansion.getValueSet()), expansion.getError());
+    }
+
+    @Override
+    public void invalidateCaches() {
+        cache.invalidateAll();
+        super.invalidateCaches();
+    }
+
+    @SuppressWarnings("unchecked")
+    private <T> T load(Supplier<T> operation, Object... key) {
+        // Not loaded through the cache: nested terminology calls would be recursive loads, a result is at worst computed twice
+        List<Object> cacheKey = Arrays.asList(key);
+        Optional<Object> result = cache.getIfPresent(cacheKey);
+        if (result == null) {
+            result = Optional.ofNullable(operation.get());
+            cache.put(cacheKey, result);
+        }
+        return (T) result.orElse(null);
+    }
+
+    private IBaseResource copy(IBaseResource theResource) {
+        IBaseResource copy = getFhirContext().getResourceDefinition(theResource).newInstance();
+        terser.cloneInto(theResource, copy, false);
+        return copy;
+    }
+
+    /**
+     * The canonical URL and the content hash of a ValueSet, null if it has no URL.
+     */
+    private List<String> key(IBaseResource theValueSet) {
+        if (theValueSet == null) {
+            return null;
+        }
+        String url = getPrimitiveValue(theValueSet, "url");
+        if (url == null || url.isEmpty()) {
+            return null;
+        }
+        String contentHash = DigestUtils.sha256Hex(getFhirContext().newJsonParser().encodeResourceToString(theValueSet));
+        return Arrays.asList(url, contentHash);
+    }
+
+    private String getPrimitiveValue(IBaseResource theResource, String thePath) {
+        return terser.getSingleValue(theResource, thePath, IPrimitiveType.class)
+            .map(IPrimitiveType::getValueAsString)
+            .orElse(null);
+    }
+
+    private static List<Object> key(ConceptValidationOptions theOptions) {
+        return theOptions == null ? null : Arrays.asList(theOptions.isInferSystem(), theOptions.isValidateDisplay());
+    }
+
+    private static List<Object> key(ValueSetExpansionOptions theOptions) {
+        return theOptions == null ? null : Arrays.asList(theOptions.getOffset(), theOptions.getCount(), theOptions.isFailOnMissingCodeSystem());
+    }
+}
@@ -0,0 +1,101 @@
+/*
+ * Copyright Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package software.amazon.fwoa;
+
+import java.util.List;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+
+import org.hl7.fhir.instance.model.api.IBase;
+import org.hl7.fhir.instance.model.api.IBaseResource;
+
+import ca.uhn.fhir.context.BaseRuntimeChildDefinition;
+import ca.uhn.fhir.context.BaseRuntimeElementCompositeDefinition;
+import ca.uhn.fhir.context.BaseRuntimeElementDefinition;
+import ca.uhn.fhir.context.FhirContext;
+
+/**
+ * Drops the parts of StructureDefinitions, ValueSets and CodeSystems that are documentation only and never read by the validator:
+ * the narrative, the descriptions and the mappings of the resources and of their elements and concepts.
+ * The resources are changed in place. Works with the R4 and STU3 models through the FhirContext definitions.
+ */
+class ConformanceResourceTrimmer {
+    private static final List<String> RESOURCE_DOCUMENTATION = ImmutableList.of("text", "description", "purpose", "copyright");
+
+    private static final ImmutableMap<String, List<String>> DOCUMENTATION_BY_RESOURCE_TYPE = ImmutableMap.of(
+        "StructureDefinition", ImmutableList.of("mapping"),
+        "ValueSet", ImmutableList.of(),
+        "CodeSystem", ImmutableList.of());
+
+    // ElementDefinition.definition and short are kept: snapshot generation copies them from the base definitions
+    private static final List<String> ELEMENT_DOCUMENTATION = ImmutableList.of("comment", "requirements", "mapping");
+
+    private final FhirContext ctx;
+
+    ConformanceResourceTrimmer(FhirContext ctx) {
+        this.ctx = ctx;
+    }
+
+    /**
+     * Trims the resource if it is a StructureDefinition, ValueSet or CodeSystem, leaves it unchanged otherwise.
+     */
+    <T extends IBaseResource> T trim(T resource) {
+        BaseRuntimeElementCompositeDefinition<?> resourceDefinition = ctx.getResourceDefinition(resource);
+        List<String> documentation = DOCUMENTATION_BY_RESOURCE_TYPE.get(resourceDefinition.getName());
+        if (documentation == null) {
+            return resource;
+        }
+        clear(resourceDefinition, resource, RESOURCE_DOCUMENTATION);
+        clear(resourceDefinition, resource, documentation);
+
+        switch (resourceDefinition.getName()) {
+            case "StructureDefinition":
+                for (String elementList : ImmutableList.of("snapshot", "differential")) {
+                    for (IBase container : children(resourceDefinition, resource, elementList)) {
+                        for (IBase element : children(composite(container), container, "element")) {
+                            clear(composite(element), element, ELEMENT_DOCUMENTATION);
+                        }
+                    }
+                }
+                break;
+            case "CodeSystem":
+                trimConcepts(resourceDefinition, resource);
+                break;
+            default:
+                break;
+        }
+        return resource;
+    }
+
+    private void trimConcepts(BaseRuntimeElementCompositeDefinition<?> parentDefinition, IBase parent) {
+        for (IBase concept : children(parentDefinition, parent, "concept")) {
+            BaseRuntimeElementCompositeDefinition<?> conceptDefinition = composite(concept);
+            clear(conceptDefinition, concept, ImmutableList.of("definition"));
+            trimConcepts(conceptDefinition, concept);
+        }
+    }
+
+    private BaseRuntimeElementCompositeDefinition<?> composite(IBase element) {
+        BaseRuntimeElementDefinition<?> definition = ctx.getElementDefinition(element.getClass());
+        return (BaseRuntimeElementCompositeDefinition<?>) definition;
+    }
+
+    private static List<IBase> children(BaseRuntimeElementCompositeDefinition<?> definition, IBase element, String name) {
+        BaseRuntimeChildDefinition child = definition.getChildByName(name);
+        return child == null ? ImmutableList.of() : child.getAccessor().getValues(element);
+    }
+
+    private static void clear(BaseRuntimeElementCompositeDefinition<?> definition, IBase element, List<String> names) {
+        for (String name : names) {
+            BaseRuntimeChildDefinition child = definition.getChildByName(name);
+            // absent from this FHIR version
+            if (child != null) {
+                child.getMutator().setValue(element, null);
+            }
+        }
+    }
+}
@@ -0,0 +1,103 @@
+/*
+ * Copyright Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package software.amazon.fwoa;
+
+import java.io.IOException;
+import java.io.PrintStream;
+import java.io.StringWriter;
+import java.io.UncheckedIOException;
+import java.util.concurrent.TimeUnit;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+
+/**
+ * Writes the {@link ValidationMetrics} as CloudWatch embedded metric format log lines, one line per validation.
+ * In Lambda, lines written to stdout are picked up by CloudWatch Logs which extracts the metrics without any API call.
+ * See https://docs.aws.amazon.com/AmazonCloudWatch/latest/monitoring/CloudWatch_Embedded_Metric_Format_Specification.html
+ */
+public class EmbeddedMetricFormatSink implements ValidationMetricsSink {
+    public static final String DEFAULT_NAMESPACE = "FhirWorksOnAws/Validator";
+
+    private static final JsonFactory JSON_FACTORY = new JsonFactory();
+
+    private final PrintStream out;
+    private final String namespace;
+
+    public EmbeddedMetricFormatSink() {
+        this(System.out, DEFAULT_NAMESPACE);
+    }
+
+    public EmbeddedMetricFormatSink(PrintStream out, String namespace) {
+        this.out = out;
+        this.namespace = namespace;
+    }
+
+    @Override
+    public void record(ValidationMetrics metrics) {
+        StringWriter line = new StringWriter(1024);
+        try (JsonGenerator generator = JSON_FACTORY.createGenerator(line)) {
+            generator.writeStartObject();
+            writeMetadata(generator);
+            generator.writeStringField("FhirVersion", metrics.getFhirVersion());
+            generator.writeStringField("ResourceType", metrics.getResourceType());
+            generator.writeNumberField("Latency", toMillis(metrics.getTotalNanos()));
+            generator.writeNumberField("ProfileResolutionTime", toMillis(metrics.getProfileResolutionNanos()));
+            generator.writeNumberField("TerminologyTime", toMillis(metrics.getTerminologyNanos()));
+            generator.writeNumberField("InstanceValidationTime", toMillis(metrics.getInstanceValidationNanos()));
+            generator.writeNumberField("ResponseBuildingTime", toMillis(metrics.getResponseBuildingNanos()));
+            generator.writeNumberField("PayloadSize", metrics.getPayloadBytes());
+            generator.writeNumberField("ErrorCount", metrics.getErrorCount());
+            generator.writeNumberField("WarningCount", metrics.getWarningCount());
+            generator.writeNumberField("InformationCount", metrics.getInformationCount());
+            generator.writeBooleanField("CacheHit", metrics.isCacheHit());
+            generator.writeBooleanField("Successful", metrics.isSuccessful());
+            generator.writeEndObject();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        out.println(line);
+    }
+
+    private void writeMetadata(JsonGenerator generator) throws IOException {
+        generator.writeObjectFieldStart("_aws");
+        generator.writeNumberField("Timestamp", System.currentTimeMillis());
+        generator.writeArrayFieldStart("CloudWatchMetrics");
+        generator.writeStartObject();
+        generator.writeStringField("Namespace", namespace);
+        generator.writeArrayFieldStart("Dimensions");
+        generator.writeStartArray();
+        generator.writeString("FhirVersion");
+        generator.writeString("ResourceType");
+        generator.writeEndArray();
+        generator.writeEndArray();
+        generator.writeArrayFieldStart("Metrics");
+        writeMetricDefinition(generator, "Latency", "Milliseconds");
+        writeMetricDefinition(generator, "ProfileResolutionTime", "Milliseconds");
+        writeMetricDefinition(generator, "TerminologyTime", "Milliseconds");
+        writeMetricDefinition(generator, "InstanceValidationTime", "Milliseconds");
+        writeMetricDefinition(generator, "ResponseBuildingTime", "Milliseconds");
+        writeMetricDefinition(generator, "PayloadSize", "Bytes");
+        writeMetricDefinition(generator, "ErrorCount", "Count");
+        writeMetricDefinition(generator, "WarningCount", "Count");
+        writeMetricDefinition(generator, "InformationCount", "Count");
+        generator.writeEndArray();
+        generator.writeEndObject();
+        generator.writeEndArray();
+        generator.writeEndObject();
+    }
+
+    private static void writeMetricDefinition(JsonGenerator generator, String name, String unit) throws IOException {
+        generator.writeStartObject();
+        generator.writeStringField("Name", name);
+        generator.writeStringField("Unit", unit);
+        generator.writeEndObject();
+    }
+
+    private static double toMillis(long nanos) {
+        return nanos / (double) TimeUnit.MILLISECONDS.toNanos(1);
+    }
+}
@@ -5,15 +5,27 @@
 
 package software.amazon.fwoa;
 
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
 import com.amazonaws.services.lambda.runtime.Context;
 import com.amazonaws.services.lambda.runtime.RequestHandler;
+import com.google.common.base.Splitter;
+import com.google.common.collect.ImmutableSet;
 
 import lombok.extern.slf4j.Slf4j;
 
 @Slf4j
 public class Handler implements RequestHandler<String, ValidatorResponse> {
 
+    // Validating a complex Patient yields better results. validating a trivial "empty" Patient won't load all the validation classes.
+    static final String SOME_SYNTHEA_PATIENT = "{\"resourceType\":\"Patient\",\"id\":\"a8bc0c9f-47b3-ee31-60c6-fb8ce8077ac7\",\"text\":{\"status\":\"generated\",\"div\":\"<div xmlns=\\\"http://www.w3.org/1999/xhtml\\\">Generated by <a href=\\\"https://github.com/synthetichealth/synthea\\\">Synthea</a>.Version identifier: master-branch-latest-2-gfd2217b\\n .   Person seed: -5969330820059413579  Population seed: 1614314878171</div>\"},\"extension\":[{\"url\":\"http://hl7.org/fhir/StructureDefinition/patient-mothersMaidenName\",\"valueString\":\"Son314 Vandervort697\"},{\"url\":\"http://hl7.org/fhir/StructureDefinition/patient-birthPlace\",\"valueAddress\":{\"city\":\"New Bedford\",\"state\":\"Massachusetts\",\"country\":\"US\"}},{\"url\":\"http://synthetichealth.github.io/synthea/disability-adjusted-life-years\",\"valueDecimal\":1.1872597438165626},{\"url\":\"http://synthetichealth.github.io/synthea/quality-adjusted-life-years\",\"valueDecimal\":70.81274025618343}],\"identifier\":[{\"system\":\"https://github.com/synthetichealth/synthea\",\"value\":\"a8bc0c9f-47b3-ee31-60c6-fb8ce8077ac7\"},{\"type\":{\"coding\":[{\"system\":\"http://terminology.hl7.org/CodeSystem/v2-0203\",\"code\":\"MR\",\"display\":\"Medical Record Number\"}],\"text\":\"Medical Record Number\"},\"system\":\"http://hospital.smarthealthit.org\",\"value\":\"a8bc0c9f-47b3-ee31-60c6-fb8ce8077ac7\"},{\"type\":{\"coding\":[{\"system\":\"http://terminology.hl7.org/CodeSystem/v2-0203\",\"code\":\"SS\",\"display\":\"Social Security Number\"}],\"text\":\"Social Security Number\"},\"system\":\"http://hl7.org/fhir/sid/us-ssn\",\"value\":\"999-49-6778\"},{\"type\":{\"coding\":[{\"system\":\"http://terminology.hl7.org/CodeSystem/v2-0203\",\"code\":\"DL\",\"display\":\"Driver's License\"}],\"text\":\"Driver's License\"},\"system\":\"urn:oid:2.16.840.1.113883.4.3.25\",\"value\":\"S99922723\"},{\"type\":{\"coding\":[{\"system\":\"http://terminology.hl7.org/CodeSystem/v2-0203\",\"code\":\"PPN\",\"display\":\"Passport Number\"}],\"text\":\"Passport Number\"},\"system\":\"http://standardhealthrecord.org/fhir/StructureDefinition/passportNumber\",\"value\":\"X72123203X\"}],\"name\":[{\"use\":\"official\",\"family\":\"Beier427\",\"given\":[\"Minnie888\"],\"prefix\":[\"Mrs.\"]},{\"use\":\"maiden\",\"family\":\"Jaskolski867\",\"given\":[\"Minnie888\"],\"prefix\":[\"Mrs.\"]}],\"telecom\":[{\"system\":\"phone\",\"value\":\"555-390-9260\",\"use\":\"home\"}],\"gender\":\"female\",\"birthDate\":\"1949-01-01\",\"address\":[{\"extension\":[{\"url\":\"http://hl7.org/fhir/StructureDefinition/geolocation\",\"extension\":[{\"url\":\"latitude\",\"valueDecimal\":41.83492774608349},{\"url\":\"longitude\",\"valueDecimal\":-70.58336455010793}]}],\"line\":[\"862 Sauer Station Suite 31\"],\"city\":\"Plymouth\",\"state\":\"Massachusetts\",\"country\":\"US\"}],\"maritalStatus\":{\"coding\":[{\"system\":\"http://terminology.hl7.org/CodeSystem/v3-MaritalStatus\",\"code\":\"M\",\"display\":\"M\"}],\"text\":\"M\"},\"multipleBirthInteger\":3,\"communication\":[{\"language\":{\"coding\":[{\"system\":\"urn:ietf:bcp:47\",\"code\":\"en-US\",\"display\":\"English\"}],\"text\":\"English\"}}]}";
+
     private final Validator validator;
+    private final ValidationOptions validationOptions = validationOptionsFromEnvironment();
+
+    // The warm-up validation is not a request, its metrics are not emitted
+    private volatile boolean warmedUp;
 
     public Handler() {
         log.info("Creating the Validator instance for the first time...");
@@ -23,19 +35,102 @@ public class Handler implements RequestHandler<String, ValidatorResponse> {
             fhirVersion = Validator.FHIR_R4;
         }
 
-        validator = new Validator(fhirVersion);
+        ValidatorConfig config = validatorConfigFromEnvironment()
+            .metricsSink(createMetricsSink())
+            .build();
 
-        log.info("Validating once to force the loading of all the validator related classes");
-        // Validating a complex Patient yields better results. validating a trivial "empty" Patient won't load all the validation classes.
-        String someSyntheaPatient = "{\"resourceType\":\"Patient\",\"id\":\"a8bc0c9f-47b3-ee31-60c6-fb8ce8077ac7\",\"text\":{\"status\":\"generated\",\"div\":\"<div xmlns=\\\"http://www.w3.org/1999/xhtml\\\">Generated by <a href=\\\"https://github.com/synthetichealth/synthea\\\">Synthea</a>.Version identifier: master-branch-latest-2-gfd2217b\\n .   Person seed: -5969330820059413579  Population seed: 1614314878171</div>\"},\"extension\":[{\"url\":\"http://hl7.org/fhir/StructureDefinition/patient-mothersMaidenName\",\"valueString\":\"Son314 Vandervort697\"},{\"url\":\"http://hl7.org/fhir/StructureDefinition/patient-birthPlace\",\"valueAddress\":{\"city\":\"New Bedford\",\"state\":\"Massachusetts\",\"country\":\"US\"}},{\"url\":\"http://synthetichealth.github.io/synthea/disability-adjusted-life-years\",\"valueDecimal\":1.1872597438165626},{\"url\":\"http://synthetichealth.github.io/synthea/quality-adjusted-life-years\",\"valueDecimal\":70.81274025618343}],\"identifier\":[{\"system\":\"https://github.com/synthetichealth/synthea\",\"value\":\"a8bc0c9f-47b3-ee31-60c6-fb8ce8077ac7\"},{\"type\":{\"coding\":[{\"system\":\"http://terminology.hl7.org/CodeSystem/v2-0203\",\"code\":\"MR\",\"display\":\"Medical Record Number\"}],\"text\":\"Medical Record Number\"},\"system\":\"http://hospital.smarthealthit.org\",\"value\":\"a8bc0c9f-47b3-ee31-60c6-fb8ce8077ac7\"},{\"type\":{\"coding\":[{\"system\":\"http://terminology.hl7.org/CodeSystem/v2-0203\",\"code\":\"SS\",\"display\":\"Social Security Number\"}],\"text\":\"Social Security Number\"},\"system\":\"http://hl7.org/fhir/sid/us-ssn\",\"value\":\"999-49-6778\"},{\"type\":{\"coding\":[{\"system\":\"http://terminology.hl7.org/CodeSystem/v2-0203\",\"code\":\"DL\",\"display\":\"Driver's License\"}],\"text\":\"Driver's License\"},\"system\":\"urn:oid:2.16.840.1.113883.4.3.25\",\"value\":\"S99922723\"},{\"type\":{\"coding\":[{\"system\":\"http://terminology.hl7.org/CodeSystem/v2-0203\",\"code\":\"PPN\",\"display\":\"Passport Number\"}],\"text\":\"Passport Number\"},\"system\":\"http://standardhealthrecord.org/fhir/StructureDefinition/passportNumber\",\"value\":\"X72123203X\"}],\"name\":[{\"use\":\"official\",\"family\":\"Beier427\",\"given\":[\"Minnie888\"],\"prefix\":[\"Mrs.\"]},{\"use\":\"maiden\",\"family\":\"Jaskolski867\",\"given\":[\"Minnie888\"],\"prefix\":[\"Mrs.\"]}],\"telecom\":[{\"system\":\"phone\",\"value\":\"555-390-9260\",\"use\":\"home\"}],\"gender\":\"female\",\"birthDate\":\"1949-01-01\",\"address\":[{\"extension\":[{\"url\":\"http://hl7.org/fhir/StructureDefinition/geolocation\",\"extension\":[{\"url\":\"latitude\",\"valueDecimal\":41.83492774608349},{\"url\":\"longitude\",\"valueDecimal\":-70.58336455010793}]}],\"line\":[\"862 Sauer Station Suite 31\"],\"city\":\"Plymouth\",\"state\":\"Massachusetts\",\"country\":\"US\"}],\"maritalStatus\":{\"coding\":[{\"system\":\"http://terminology.hl7.org/CodeSystem/v3-MaritalStatus\",\"code\":\"M\",\"display\":\"M\"}],\"text\":\"M\"},\"multipleBirthInteger\":3,\"communication\":[{\"language\":{\"coding\":[{\"system\":\"urn:ietf:bcp:47\",\"code\":\"en-US\",\"display\":\"English\"}],\"text\":\"English\"}}]}";
-        validator.validate(someSyntheaPatient);
+        validator = new Validator(fhirVersion, Validator.DEFAULT_IMPLEMENTATION_GUIDES_FOLDER, config);
+
+        warmUp();
+        warmedUp = true;
         log.info("Validator is ready");
     }
 
+    /**
+     * Validates the warm-up corpus to force the loading of the validator related classes and of the implementation guides profiles.
+     */
+    private void warmUp() {
+        List<String> corpus = WarmUpCorpus.fromEnvironment(validator);
+        log.info("Validating {} warm-up resources to force the loading of all the validator related classes", corpus.size());
+        long start = System.nanoTime();
+        for (String resource : corpus) {
+            validator.validate(resource);
+        }
+        log.info("Warm-up took {} ms", TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+    }
+
     @Override
     public ValidatorResponse handleRequest(String event, Context context) {
-        ValidatorResponse validate = validator.validate(event);
+        ValidatorResponse validate = validator.validate(event, validationOptions);
         return validate;
 
     }
+
+    Validator getValidator() {
+        return validator;
+    }
+
+    ValidationOptions getValidationOptions() {
+        return validationOptions;
+    }
+
+    /**
+     * Batch entry point. Configure the function handler as {@code software.amazon.fwoa.Handler::handleBatchRequest} to use it.
+     * The event is either a JSON array of resources or a Bundle. One response is returned per resource or Bundle entry, in order,
+     * with the same response options as {@link #handleRequest}.
+     */
+    public List<ValidatorResponse> handleBatchRequest(String event, Context context) {
+        return validator.validateBatch(event, validationOptions);
+    }
+
+    /**
+     * Validation metrics are written to stdout in CloudWatch embedded metric format when VALIDATION_METRICS_ENABLED is true.
+     */
+    private ValidationMetricsSink createMetricsSink() {
+        if (!Boolean.parseBoolean(System.getenv("VALIDATION_METRICS_ENABLED"))) {
+            return ValidationMetricsSink.NOOP;
+        }
+        String namespace = System.getenv("VALIDATION_METRICS_NAMESPACE");
+        ValidationMetricsSink emfSink = new EmbeddedMetricFormatSink(System.out,
+            namespace == null || namespace.isEmpty() ? EmbeddedMetricFormatSink.DEFAULT_NAMESPACE : namespace);
+        return metrics -> {
+            if (warmedUp) {
+                emfSink.record(metrics);
+            }
+        };
+    }
+
+    /**
+     * The cache and memory settings of the validator, read from the VALIDATION_* environment variables.
+     * VALIDATION_BASE_RESOURCE_TYPES is a comma separated list of resource types. VALIDATION_LAZY_IG_LOADING=true parses the
+     * implementation guide resources on first use, a broken implementation guide then fails a request instead of the initialization.
+     */
+    static ValidatorConfig.ValidatorConfigBuilder validatorConfigFromEnvironment() {
+        String baseResourceTypes = System.getenv("VALIDATION_BASE_RESOURCE_TYPES");
+        return ValidatorConfig.builder()
+            .resultCacheMaximumSize(getLongEnv("VALIDATION_RESULT_CACHE_SIZE", ValidatorConfig.DEFAULT.getResultCacheMaximumSize()))
+            .resultCacheTtlSeconds(getLongEnv("VALIDATION_RESULT_CACHE_TTL_SECONDS", ValidatorConfig.DEFAULT.getResultCacheTtlSeconds()))
+            .terminologyCacheMaximumSize(getLongEnv("VALIDATION_TERMINOLOGY_CACHE_SIZE", ValidatorConfig.DEFAULT.getTerminologyCacheMaximumSize()))
+            .lazyIgLoading(Boolean.parseBoolean(System.getenv("VALIDATION_LAZY_IG_LOADING")))
+            .reducedMemory(Boolean.parseBoolean(System.getenv("VALIDATION_REDUCED_MEMORY")))
+            .baseResourceTypes(baseResourceTypes == null || baseResourceTypes.isEmpty()
+                ? null
+                : ImmutableSet.copyOf(Splitter.on(',').trimResults().omitEmptyStrings().split(baseResourceTypes)));
+    }
+
+    /**
+     * The response options of the validations, read from VALIDATION_GROUP_MESSAGES and VALIDATION_MAX_MESSAGES.
+     * Without them every message is reported separately, as before.
+     */
+    static ValidationOptions validationOptionsFromEnvironment() {
+        return ValidationOptions.builder()
+            .groupMessages(Boolean.parseBoolean(System.getenv("VALIDATION_GROUP_MESSAGES")))
+            .maxMessages((int) getLongEnv("VALIDATION_MAX_MESSAGES", ValidationOptions.DEFAULT.getMaxMessages()))
+            .build();
+    }
+
+    static long getLongEnv(String name, long defaultValue) {
+        String value = System.getenv(name);
+        return value == null || value.isEmpty() ? defaultValue : Long.parseLong(value);
+    }
 }
@@ -0,0 +1,477 @@
+/*
+ * Copyright Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package software.amazon.fwoa;
+
+import static org.apache.commons.lang3.StringUtils.isNotBlank;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import com.google.common.collect.ImmutableSet;
+import com.google.common.io.ByteStreams;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.google.gson.Gson;
+
+import org.apache.commons.codec.digest.DigestUtils;
+import org.apache.commons.lang3.Validate;
+import org.hl7.fhir.instance.model.api.IBase;
+import org.hl7.fhir.instance.model.api.IBaseResource;
+import org.hl7.fhir.instance.model.api.IPrimitiveType;
+import org.hl7.fhir.r4.model.CodeSystem;
+import org.hl7.fhir.r4.model.StructureDefinition;
+import org.hl7.fhir.r4.model.ValueSet;
+
+import ca.uhn.fhir.context.FhirContext;
+import ca.uhn.fhir.context.RuntimeResourceDefinition;
+import ca.uhn.fhir.parser.IParser;
+import ca.uhn.fhir.parser.StrictErrorHandler;
+import io.github.classgraph.ClassGraph;
+import io.github.classgraph.Resource;
+import io.github.classgraph.ResourceList;
+import io.github.classgraph.ScanResult;
+import lombok.Value;
+import lombok.extern.slf4j.Slf4j;
+import software.amazon.fwoa.LazyIgValidationSupport.LazyIgResource;
+import software.amazon.fwoa.models.IgFile;
+import software.amazon.fwoa.models.IgIndex;
+
+/**
+ * Loads the StructureDefinitions, CodeSystems and ValueSets of the implementation guides found on the classpath.
+ * A precompiled {@link IgSnapshot} is used when one exists for the same implementation guides.
+ */
+@Slf4j
+class IgLoader {
+    private static final Gson GSON = new Gson();
+    private static final ImmutableSet<String> ALLOWED_RESOURCE_TYPES = ImmutableSet.of("StructureDefinition", "CodeSystem", "ValueSet");
+
+    private final FhirContext ctx;
+    private final String fhirVersion;
+    private final String implementationGuidesFolder;
+    private final int parseThreads;
+    private final File implementationGuidesDirectory;
+
+    // null to keep the resources as parsed
+    private final ConformanceResourceTrimmer trimmer;
+
+    IgLoader(FhirContext ctx, String fhirVersion, String implementationGuidesFolder) {
+        this(ctx, fhirVersion, implementationGuidesFolder, 1);
+    }
+
+    IgLoader(FhirContext ctx, String fhirVersion, String implementationGuidesFolder, int parseThreads) {
+        this(ctx, fhirVersion, implementationGuidesFolder, parseThreads, null);
+    }
+
+    /**
+     * @param implementationGuidesDirectory directory that contains the implementation guides folder, or null to read it from the classpath
+     */
+    IgLoader(FhirContext ctx, String fhirVersion, String implementationGuidesFolder, int parseThreads, File implementationGuidesDirectory) {
+        this(ctx, fhirVersion, implementationGuidesFolder, parseThreads, implementationGuidesDirectory, false);
+    }
+
+    /**
+     * @param trimResources drop the documentation of the loaded resources, see {@link ConformanceResourceTrimmer}
+     */
+    IgLoader(FhirContext ctx, String fhirVersion, String implementationGuidesFolder, int parseThreads, File implementationGuidesDirectory,
+             boolean trimResources) {
+        this.ctx = ctx;
+        this.fhirVersion = fhirVersion;
+        this.implementationGuidesFolder = implementationGuidesFolder;
+        this.parseThreads = parseThreads;
+        this.implementationGuidesDirectory = implementationGuidesDirectory;
+        this.trimmer = trimResources ? new ConformanceResourceTrimmer(ctx) : null;
+    }
+
+    /**
+     * Reads the precompiled snapshot if there is one and it was built from the implementation guides currently on the classpath.
+     */
+    Optional<IgSnapshot> loadSnapshot() {
+        if (implementationGuidesDirectory != null) {
+            // snapshots are built for the implementation guides packaged on the classpath
+            return Optional.empty();
+        }
+        String snapshotPath = IgSnapshot.resourcePath(implementationGuidesFolder, fhirVersion);
+        InputStream inputStream = Thread.currentThread().getContextClassLoader().getResourceAsStream(snapshotPath);
+        if (inputStream == null) {
+            return Optional.empty();
+        }
+
+        IgSnapshot snapshot;
+        try (InputStream in = inputStream) {
+            snapshot = IgSnapshot.read(in);
+        } catch (Exception e) {
+            // The snapshot may have been written by a different version of this class or of HAPI
+            log.warn("Ignoring unreadable implementation guides snapshot {}", snapshotPath, e);
+            return Optional.empty();
+        }
+
+        String currentFingerprint = fingerprint();
+        if (!snapshot.getFhirVersion().equals(fhirVersion) || !snapshot.getFingerprint().equals(currentFingerprint)) {
+            log.warn("Ignoring stale implementation guides snapshot {}", snapshotPath);
+            return Optional.empty();
+        }
+        log.info("Loaded implementation guides from snapshot {}", snapshotPath);
+        if (trimmer != null) {
+            // trimming is idempotent, the instances shared by the alias keys are trimmed once per key
+            snapshot.getStructureDefinitions().values().forEach(trimmer::trim);
+            snapshot.getValueSets().values().forEach(trimmer::trim);
+            snapshot.getCodeSystems().values().forEach(trimmer::trim);
+        }
+        return Optional.of(snapshot);
+    }
+
+    /**
+     * Hash of the .index.json files of the implementation guides and of the resource files they declare.
+     * It changes whenever an implementation guide is added, removed or updated, including when a resource file is edited in place.
+     */
+    String fingerprint() {
+        try (ScanResult allFiles = scan()) {
+            return fingerprint(allFiles, indexFiles(allFiles));
+        }
+    }
+
+    /**
+     * The resource profiles declared in the .index.json files of the implementation guides, by canonical URL, with the resource type they constrain.
+     * Nothing is parsed.
+     */
+    SortedMap<String, String> profiles() {
+        SortedMap<String, String> profiles = new TreeMap<>();
+        try (ScanResult allFiles = scan()) {
+            for (Resource indexFile : indexFiles(allFiles)) {
+                IgIndex igIndex = GSON.fromJson(indexFile.getContentAsString(), IgIndex.class);
+                for (IgFile file : igIndex.files) {
+                    if ("StructureDefinition".equals(file.resourceType) && "resource".equals(file.kind) && isNotBlank(file.url) && isNotBlank(file.type)) {
+                        profiles.put(file.url, file.type);
+                    }
+                }
+            }
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+        return profiles;
+    }
+
+    /**
+     * Parses the resources of each implementation guide separately, by implementation guide folder. Used to measure their footprint.
+     */
+    SortedMap<String, List<IBaseResource>> loadByImplementationGuide() {
+        SortedMap<String, List<IBaseResource>> resourcesByImplementationGuide = new TreeMap<>();
+        try (ScanResult allFiles = scan()) {
+            for (Resource indexFile : indexFiles(allFiles)) {
+                String implementationGuide = indexFile.getPath().substring(0, indexFile.getPath().lastIndexOf("/.index.json"));
+                resourcesByImplementationGuide.put(implementationGuide, parseAll(readIgResourceFiles(allFiles, Collections.singletonList(indexFile))));
+            }
+        } catch (Exception e) {
+            throw new RuntimeException(e);
+        }
+        return resourcesByImplementationGuide;
+    }
+
+    IgSnapshot load() {
+        final Map<String, IBaseResource> myCodeSystems = new HashMap<>();
+        final Map<String, IBaseResource> myStructureDefinitions = new HashMap<>();
+        final Map<String, IBaseResource> myValueSets = new HashMap<>();
+
+        try (ScanResult allFiles = scan()) {
+            ResourceList indexFiles = indexFiles(allFiles);
+
+            // Files are resolved and read in declaration order so that a missing file is always reported the same way.
+            // Only the parsing runs in parallel, the results are then added to the maps in declaration order, same as a sequential load.
+            List<IgResourceFile> igResourceFiles = readIgResourceFiles(allFiles, indexFiles);
+            List<IBaseResource> igResources = parseAll(igResourceFiles);
+
+            for (int i = 0; i < igResourceFiles.size(); i++) {
+                IBaseResource igResource = igResources.get(i);
+                switch (igResourceFiles.get(i).getResourceType()) {
+                    case "StructureDefinition":
+                        addStructureDefinition(igResource, myStructureDefinitions);
+                        break;
+                    case "CodeSystem":
+                        addCodeSystem(igResource, myCodeSystems);
+                        break;
+                    case "ValueSet":
+                        addValueSet(igResource, myValueSets);
+                        break;
+                    default:
+                        // cannot happen since we checked for allowedResourceTypes
+                        break;
+                }
+            }
+            return new IgSnapshot(fhirVersion, fingerprint(allFiles, indexFiles), myStructureDefinitions, myValueSets, myCodeSystems);
+        } catch (Exception e) {
+            log.error("Failed to load Implementation guides", e);
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * Indexes the implementation guides by the canonical URLs declared in .index.json without parsing them.
+     * Each resource is parsed the first time it is requested. Resources without a URL in .index.json are parsed right away.
+     */
+    LazyIgValidationSupport loadLazily() {
+        final Map<String, LazyIgResource> myCodeSystems = new HashMap<>();
+        final Map<String, LazyIgResource> myStructureDefinitions = new HashMap<>();
+        final Map<String, LazyIgResource> myValueSets = new HashMap<>();
+
+        try (ScanResult allFiles = scan()) {
+            ResourceList indexFiles = indexFiles(allFiles);
+
+            for (Resource indexFile : indexFiles) {
+                IgIndex igIndex = GSON.fromJson(indexFile.getContentAsString(), IgIndex.class);
+                for (IgFile file : igIndex.files) {
+                    if (ALLOWED_RESOURCE_TYPES.contains(file.resourceType)) {
+
+                        String igResourcePath = indexFile.getPath().replace(".index.json", file.filename);
+                        ResourceList resourcesWithPath = allFiles.getResourcesWithPath(igResourcePath);
+                        if (resourcesWithPath.isEmpty()) {
+                            throw new RuntimeException("The following file is declared in .index.json but does not exist: " + igResourcePath);
+                        }
+                        // The scan result is closed once indexed, keep the URL to read the file later
+                        URL igResourceUrl = resourcesWithPath.get(0).getURL();
+                        String resourceType = file.resourceType;
+
+                        LazyIgResource lazyIgResource;
+                        String url = file.url;
+                        if (isNotBlank(url)) {
+                            lazyIgResource = new LazyIgResource(() -> parseFromUrl(resourceType, igResourcePath, igResourceUrl));
+                        } else {
+                            log.info("loading {}", igResourcePath);
+                            IBaseResource igResource = parseFromUrl(resourceType, igResourcePath, igResourceUrl);
+                            url = processResourceAndReturnUrl(igResource, resourceType);
+                            lazyIgResource = new LazyIgResource(igResource);
+                        }
+
+                        switch (resourceType) {
+                            case "StructureDefinition":
+                                addToMap(lazyIgResource, myStructureDefinitions, url);
+                                break;
+                            case "CodeSystem":
+                                addToMap(lazyIgResource, myCodeSystems, url);
+                                break;
+                            case "ValueSet":
+                                addToMap(lazyIgResource, myValueSets, url);
+                                break;
+                            default:
+                                // cannot happen since we checked for allowedResourceTypes
+                                break;
+                        }
+                    }
+                }
+            }
+            return new LazyIgValidationSupport(ctx, fingerprint(allFiles, indexFiles), myStructureDefinitions, myValueSets, myCodeSystems);
+        } catch (Exception e) {
+            log.error("Failed to load Implementation guides", e);
+            throw new RuntimeException(e);
+        }
+    }
+
+    private IBaseResource parseFromUrl(String resourceType, String igResourcePath, URL igResourceUrl) {
+        log.debug("parsing {}", igResourcePath);
+        try (InputStream inputStream = igResourceUrl.openStream()) {
+            IBaseResource igResource = parse(newParser(), new IgResourceFile(resourceType, igResourcePath, ByteStreams.toByteArray(inputStream)));
+            processResourceAndReturnUrl(igResource, resourceType);
+            return igResource;
+        } catch (Exception e) {
+            log.error("Failed to load Implementation guide resource {}", igResourcePath, e);
+            throw new RuntimeException("Failed to load Implementation guide resource " + igResourcePath, e);
+        }
+    }
+
+    private static List<IgResourceFile> readIgResourceFiles(ScanResult allFiles, List<Resource> indexFiles) throws IOException {
+        List<IgResourceFile> igResourceFiles = new ArrayList<>();
+        for (Resource indexFile : indexFiles) {
+            IgIndex igIndex = GSON.fromJson(indexFile.getContentAsString(), IgIndex.class);
+            for (IgFile file : igIndex.files) {
+                if (ALLOWED_RESOURCE_TYPES.contains(file.resourceType)) {
+
+                    String igResourcePath = indexFile.getPath().replace(".index.json", file.filename);
+                    log.info("loading {}", igResourcePath);
+                    ResourceList resourcesWithPath = allFiles.getResourcesWithPath(igResourcePath);
+                    if (resourcesWithPath.isEmpty()) {
+                        throw new RuntimeException("The following file is declared in .index.json but does not exist: " + igResourcePath);
+                    }
+                    igResourceFiles.add(new IgResourceFile(file.resourceType, igResourcePath, resourcesWithPath.get(0).load()));
+                }
+            }
+        }
+        return igResourceFiles;
+    }
+
+    private List<IBaseResource> parseAll(List<IgResourceFile> igResourceFiles) throws Exception {
+        int threads = Math.min(parseThreads, igResourceFiles.size());
+        if (threads <= 1) {
+            IParser parser = newParser();
+            List<IBaseResource> igResources = new ArrayList<>(igResourceFiles.size());
+            for (IgResourceFile igResourceFile : igResourceFiles) {
+                igResources.add(parse(parser, igResourceFile));
+            }
+            return igResources;
+        }
+
+        ExecutorService executor = Executors.newFixedThreadPool(threads, new ThreadFactoryBuilder()
+            .setNameFormat("ig-loader-%d")
+            .setDaemon(true)
+            .build());
+        try {
+            List<Future<IBaseResource>> futures = new ArrayList<>(igResourceFiles.size());
+            for (IgResourceFile igResourceFile : igResourceFiles) {
+                // IParser is not thread safe, parsers are cheap to create
+                futures.add(executor.submit(() -> parse(newParser(), igResourceFile)));
+            }
+            List<IBaseResource> igResources = new ArrayList<>(futures.size());
+            for (Future<IBaseResource> future : futures) {
+                try {
+                    igResources.add(future.get());
+                } catch (ExecutionException e) {
+                    // report the first failure in declaration order
+                    throw e.getCause() instanceof Exception ? (Exception) e.getCause() : e;
+                }
+            }
+            return igResources;
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    private IParser newParser() {
+        IParser parser = ctx.newJsonParser();
+        parser.setParserErrorHandler(new StrictErrorHandler());
+        return parser;
+    }
+
+    private IBaseResource parse(IParser parser, IgResourceFile igResourceFile) {
+        IBaseResource igResource = parseResource(parser, igResourceFile);
+        return trimmer == null ? igResource : trimmer.trim(igResource);
+    }
+
+    private IBaseResource parseResource(IParser parser, IgResourceFile igResourceFile) {
+        switch (igResourceFile.getResourceType()) {
+            case "StructureDefinition":
+                Class<? extends IBaseResource> structureDefinitionClass = fhirVersion.equals(Validator.FHIR_R4)
+                    ? StructureDefinition.class
+                    : org.hl7.fhir.dstu3.model.StructureDefinition.class;
+                return parser.parseResource(structureDefinitionClass, new ByteArrayInputStream(igResourceFile.getContent()));
+            case "CodeSystem":
+                Class<? extends IBaseResource> codeSystemClass = fhirVersion.equals(Validator.FHIR_R4)
+                    ? CodeSystem.class
+                    : org.hl7.fhir.dstu3.model.CodeSystem.class;
+                return parser.parseResource(codeSystemClass, new ByteArrayInputStream(igResourceFile.getContent()));
+            case "ValueSet":
+                Class<? extends IBaseResource> valueSetClass = fhirVersion.equals(Validator.FHIR_R4)
+                    ? ValueSet.class
+                    : org.hl7.fhir.dstu3.model.ValueSet.class;
+                return parser.parseResource(valueSetClass, new ByteArrayInputStream(igResourceFile.getContent()));
+            default:
+                throw new IllegalArgumentException("Unexpected resource type " + igResourceFile.getResourceType() + " in " + igResourceFile.getPath());
+        }
+    }
+
+    private ScanResult scan() {
+        ClassGraph classGraph = new ClassGraph();
+        if (implementationGuidesDirectory != null) {
+            classGraph.overrideClasspath(implementationGuidesDirectory);
+        }
+        return classGraph.acceptPaths(implementationGuidesFolder).rejectPaths(implementationGuidesFolder + "/*/*").scan();
+    }
+
+    private static ResourceList indexFiles(ScanResult allFiles) {
+        return allFiles.getResourcesWithExtension("json").filter(x -> x.getPath().endsWith(".index.json"));
+    }
+
+    private static String fingerprint(ScanResult allFiles, ResourceList indexFiles) {
+        SortedMap<String, String> fileHashes = new TreeMap<>();
+        try {
+            for (Resource indexFile : indexFiles) {
+                byte[] index = indexFile.load();
+                fileHashes.put(indexFile.getPath(), DigestUtils.sha256Hex(index));
+                IgIndex igIndex = GSON.fromJson(new String(index, StandardCharsets.UTF_8), IgIndex.class);
+                for (IgFile file : igIndex.files) {
+                    if (ALLOWED_RESOURCE_TYPES.contains(file.resourceType)) {
+                        String igResourcePath = indexFile.getPath().replace(".index.json", file.filename);
+                        ResourceList resourcesWithPath = allFiles.getResourcesWithPath(igResourcePath);
+                        // a missing file fails the load, the fingerprint only has to change when the file appears
+                        fileHashes.put(igResourcePath,
+                            resourcesWithPath.isEmpty() ? "missing" : DigestUtils.sha256Hex(resourcesWithPath.get(0).load()));
+                    }
+                }
+            }
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+        return DigestUtils.sha256Hex(fileHashes.toString());
+    }
+
+    // The following methods are mostly identical as the ones within PrePopulatedValidationSupport.
+    // There is an issue that prevents using PrePopulatedValidationSupport.addValueSet for dstu3 https://github.com/hapifhir/hapi-fhir/issues/2432
+    // The workaround is to use the constructor instead, but that requires us to build the resource maps exactly as PrePopulatedValidationSupport expects them.
+    // Once the issue is fixed this methods can be deleted and simply use addStructureDefinition, addCodeSystem, addValueSet from PrePopulatedValidationSupport.
+    private void addCodeSystem(IBaseResource theCodeSystem, Map<String, IBaseResource> theCodeSystems) {
+        String url = processResourceAndReturnUrl(theCodeSystem, "CodeSystem");
+        addToMap(theCodeSystem, theCodeSystems, url);
+    }
+
+    private void addStructureDefinition(IBaseResource theStructureDefinition, Map<String, IBaseResource> theStructureDefinitions) {
+        String url = processResourceAndReturnUrl(theStructureDefinition, "StructureDefinition");
+        addToMap(theStructureDefinition, theStructureDefinitions, url);
+    }
+
+    private void addValueSet(IBaseResource theValueSet, Map<String, IBaseResource> theValueSets) {
+        String url = processResourceAndReturnUrl(theValueSet, "ValueSet");
+        addToMap(theValueSet, theValueSets, url);
+    }
+
+    private String processResourceAndReturnUrl(IBaseResource theCodeSystem, String theResourceName) {
+        Validate.notNull(theCodeSystem, "the" + theResourceName + " must not be null");
+        RuntimeResourceDefinition resourceDef = ctx.getResourceDefinition(theCodeSystem);
+        String actualResourceName = resourceDef.getName();
+        Validate.isTrue(actualResourceName.equals(theResourceName), "the" + theResourceName + " must be a " + theResourceName + " - Got: " + actualResourceName);
+
+        Optional<IBase> urlValue = resourceDef.getChildByName("url").getAccessor().getFirstValueOrNull(theCodeSystem);
+        String url = urlValue.map(t -> (((IPrimitiveType<?>) t).getValueAsString())).orElse(null);
+
+        Validate.notNull(url, "the" + theResourceName + ".getUrl() must not return null");
+        Validate.notBlank(url, "the" + theResourceName + ".getUrl() must return a value");
+        return url;
+    }
+
+    private static <T> void addToMap(T theStructureDefinition, Map<String, T> map, String theUrl) {
+        if (isNotBlank(theUrl)) {
+            map.put(theUrl, theStructureDefinition);
+
+            int lastSlashIdx = theUrl.lastIndexOf('/');
+            if (lastSlashIdx != -1) {
+                map.put(theUrl.substring(lastSlashIdx + 1), theStructureDefinition);
+                int previousSlashIdx = theUrl.lastIndexOf('/', lastSlashIdx - 1);
+                if (previousSlashIdx != -1) {
+                    map.put(theUrl.substring(previousSlashIdx + 1), theStructureDefinition);
+                }
+            }
+
+        }
+    }
+
+    @Value
+    private static class IgResourceFile {
+        private String resourceType;
+        private String path;
+        private byte[] content;
+    }
+}
@@ -0,0 +1,67 @@
+/*
+ * Copyright Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package software.amazon.fwoa;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.OutputStream;
+import java.io.Serializable;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.hl7.fhir.common.hapi.validation.support.PrePopulatedValidationSupport;
+import org.hl7.fhir.instance.model.api.IBaseResource;
+
+import ca.uhn.fhir.context.FhirContext;
+import lombok.Value;
+
+/**
+ * The parsed resources of a set of implementation guides, keyed exactly as PrePopulatedValidationSupport expects them
+ * (full URL, last segment and last two segments of the URL).
+ * A snapshot is precompiled at build time by the IgSnapshotBuilder tool so that the Lambda cold start does not need to parse the implementation guides.
+ */
+@Value
+class IgSnapshot implements Serializable {
+    private static final long serialVersionUID = 1L;
+
+    private String fhirVersion;
+    private String fingerprint;
+    private Map<String, IBaseResource> structureDefinitions;
+    private Map<String, IBaseResource> valueSets;
+    private Map<String, IBaseResource> codeSystems;
+
+    static String resourcePath(String implementationGuidesFolder, String fhirVersion) {
+        return implementationGuidesFolder + "/igs-snapshot-" + fhirVersion + ".bin";
+    }
+
+    static IgSnapshot read(InputStream inputStream) throws IOException, ClassNotFoundException {
+        try (ObjectInputStream in = new ObjectInputStream(new BufferedInputStream(inputStream))) {
+            return (IgSnapshot) in.readObject();
+        }
+    }
+
+    void write(OutputStream outputStream) throws IOException {
+        // The alias keys point to the same resource instances, Java serialization writes each resource only once
+        try (ObjectOutputStream out = new ObjectOutputStream(new BufferedOutputStream(outputStream))) {
+            out.writeObject(this);
+        }
+    }
+
+    int getResourceCount() {
+        return (int) (structureDefinitions.values().stream().distinct().count()
+            + valueSets.values().stream().distinct().count()
+            + codeSystems.values().stream().distinct().count());
+    }
+
+    PrePopulatedValidationSupport toValidationSupport(FhirContext ctx) {
+        // PrePopulatedValidationSupport keeps a reference to the maps, copy them so that the snapshot stays unchanged
+        return new PrePopulatedValidationSupport(ctx, new HashMap<>(structureDefinitions), new HashMap<>(valueSets), new HashMap<>(codeSystems));
+    }
+}
@@ -0,0 +1,133 @@
+/*
+ * Copyright Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package software.amazon.fwoa;
+
+import java.util.Objects;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Function;
+import java.util.function.UnaryOperator;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Keeps the validator pool of a long-running server up to date with the implementation guides.
+ * The fingerprint of the implementation guide files is polled; when it changes, a new pool is built and warmed up in the background
+ * while the current pool keeps serving, then the new pool is swapped in atomically. The validations in progress finish on the
+ * old pool, which is closed once they are done.
+ */
+@Slf4j
+class ImplementationGuidesReloader implements AutoCloseable {
+    private final AtomicReference<ValidatorPool> current;
+    private final UnaryOperator<ValidatorPool> poolFactory;
+    private final ScheduledExecutorService scheduler;
+
+    // a broken implementation guide is not rebuilt at every poll, only once it changes again
+    private String failedFingerprint;
+
+    /**
+     * @param poolFactory builds and warms up a pool of validators with the implementation guides as they are when it is called, from the current pool
+     * @param pollIntervalSeconds 0 disables the polling, {@link #reloadIfChanged()} can still be called
+     */
+    ImplementationGuidesReloader(ValidatorPool initialPool, UnaryOperator<ValidatorPool> poolFactory, long pollIntervalSeconds) {
+        this.current = new AtomicReference<>(initialPool);
+        this.poolFactory = poolFactory;
+        if (pollIntervalSeconds > 0) {
+            // a single low priority thread, so that rebuilding takes as little CPU as possible from the requests being served
+            scheduler = Executors.newSingleThreadScheduledExecutor(new ThreadFactoryBuilder()
+                .setNameFormat("ig-reloader-%d")
+                .setDaemon(true)
+                .setPriority(Thread.MIN_PRIORITY)
+                .build());
+            scheduler.scheduleWithFixedDelay(this::pollSafely, pollIntervalSeconds, pollIntervalSeconds, TimeUnit.SECONDS);
+        } else {
+            scheduler = null;
+        }
+    }
+
+    ValidatorPool get() {
+        return current.get();
+    }
+
+    /**
+     * Runs the function with a validator of the current pool. A pool retired between the lookup and the call takes no new
+     * callers, the function then runs on the pool that replaced it.
+     *
+     * @throws IllegalStateException once the reloader is closed
+     */
+    <T> T apply(Function<Validator, T> function) {
+        while (true) {
+            ValidatorPool pool = current.get();
+            if (pool.acquire()) {
+                try {
+                    return pool.applyAcquired(function);
+                } finally {
+                    pool.release();
+                }
+            }
+            if (pool == current.get()) {
+                throw new IllegalStateException("The validators are closed");
+            }
+        }
+    }
+
+    /**
+     * Rebuilds the validator pool if the implementation guides changed since the current pool was built.
+     *
+     * @return true if a new pool was swapped in
+     */
+    synchronized boolean reloadIfChanged() {
+        ValidatorPool oldPool = current.get();
+        String fingerprint = oldPool.readIgFingerprint();
+        if (fingerprint.equals(oldPool.getIgFingerprint()) || fingerprint.equals(failedFingerprint)) {
+            return false;
+        }
+
+        log.info("Implementation guides changed, building new validators");
+        long start = System.nanoTime();
+        ValidatorPool newPool;
+        try {
+            newPool = poolFactory.apply(oldPool);
+        } catch (RuntimeException e) {
+            failedFingerprint = fingerprint;
+            log.error("Failed to load the changed implementation guides, the validators are not replaced", e);
+            return false;
+        }
+        if (!Objects.equals(newPool.getIgFingerprint(), fingerprint)) {
+            // the implementation guides changed again while building, the next poll picks up the latest ones
+            log.info("Implementation guides changed while the new validators were built");
+        }
+        failedFingerprint = null;
+
+        current.set(newPool);
+        oldPool.retire();
+        log.info("Swapped in validators for implementation guides {} in {} ms", newPool.getIgFingerprint(),
+            TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+        return true;
+    }
+
+    private void pollSafely() {
+        try {
+            reloadIfChanged();
+        } catch (RuntimeException e) {
+            // keep polling
+            log.error("Failed to check the implementation guides for changes", e);
+        }
+    }
+
+    @Override
+    public void close() {
+        if (scheduler != null) {
+            scheduler.shutdownNow();
+        }
+        // the validations in progress finish before the validators are closed
+        current.get().retire();
+    }
+}
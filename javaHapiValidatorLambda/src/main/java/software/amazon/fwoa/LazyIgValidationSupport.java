@@ -0,0 +1,152 @@
+/*
+ * Copyright Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package software.amazon.fwoa;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+import org.hl7.fhir.common.hapi.validation.support.BaseValidationSupport;
+import org.hl7.fhir.instance.model.api.IBaseResource;
+
+import ca.uhn.fhir.context.FhirContext;
+import ca.uhn.fhir.context.support.ValidationSupportContext;
+
+/**
+ * Validation support module that serves the resources of the implementation guides like PrePopulatedValidationSupport does,
+ * but only parses a resource the first time it is requested. The resources are indexed by the canonical URLs declared in .index.json,
+ * using the same URL aliases as PrePopulatedValidationSupport.
+ */
+class LazyIgValidationSupport extends BaseValidationSupport {
+    private final String fingerprint;
+    private final Map<String, LazyIgResource> structureDefinitions;
+    private final Map<String, LazyIgResource> valueSets;
+    private final Map<String, LazyIgResource> codeSystems;
+
+    private final AtomicInteger parsedResourceCount = new AtomicInteger();
+
+    LazyIgValidationSupport(FhirContext ctx, String fingerprint, Map<String, LazyIgResource> structureDefinitions,
+                            Map<String, LazyIgResource> valueSets, Map<String, LazyIgResource> codeSystems) {
+        super(ctx);
+        this.fingerprint = fingerprint;
+        this.structureDefinitions = structureDefinitions;
+        this.valueSets = valueSets;
+        this.codeSystems = codeSystems;
+    }
+
+    String getFingerprint() {
+        return fingerprint;
+    }
+
+    /**
+     * Number of distinct implementation guide resources, parsed or not.
+     */
+    int getResourceCount() {
+        Set<LazyIgResource> resources = Collections.newSetFromMap(new IdentityHashMap<>());
+        resources.addAll(structureDefinitions.values());
+        resources.addAll(valueSets.values());
+        resources.addAll(codeSystems.values());
+        return resources.size();
+    }
+
+    /**
+     * Number of implementation guide resources parsed so far.
+     */
+    int getParsedResourceCount() {
+        return parsedResourceCount.get();
+    }
+
+    @Override
+    public IBaseResource fetchStructureDefinition(String theUrl) {
+        return resolve(structureDefinitions.get(theUrl));
+    }
+
+    @Override
+    public IBaseResource fetchValueSet(String theValueSetUrl) {
+        return resolve(valueSets.get(theValueSetUrl));
+    }
+
+    @Override
+    public IBaseResource fetchCodeSystem(String theSystem) {
+        return resolve(codeSystems.get(theSystem));
+    }
+
+    @Override
+    public boolean isCodeSystemSupported(ValidationSupportContext theValidationSupportContext, String theSystem) {
+        return codeSystems.containsKey(theSystem);
+    }
+
+    @Override
+    public boolean isValueSetSupported(ValidationSupportContext theValidationSupportContext, String theValueSetUrl) {
+        return valueSets.containsKey(theValueSetUrl);
+    }
+
+    // The fetchAll methods parse every resource of the requested kind
+    @Override
+    @SuppressWarnings("unchecked")
+    public <T extends IBaseResource> List<T> fetchAllStructureDefinitions() {
+        return (List<T>) resolveAll(structureDefinitions.values());
+    }
+
+    @Override
+    public List<IBaseResource> fetchAllConformanceResources() {
+        List<IBaseResource> resources = new ArrayList<>();
+        resources.addAll(resolveAll(codeSystems.values()));
+        resources.addAll(resolveAll(structureDefinitions.values()));
+        resources.addAll(resolveAll(valueSets.values()));
+        return resources;
+    }
+
+    private IBaseResource resolve(LazyIgResource lazyIgResource) {
+        return lazyIgResource == null ? null : lazyIgResource.get(parsedResourceCount);
+    }
+
+    private List<IBaseResource> resolveAll(Collection<LazyIgResource> lazyIgResources) {
+        List<IBaseResource> resources = new ArrayList<>(lazyIgResources.size());
+        for (LazyIgResource lazyIgResource : lazyIgResources) {
+            resources.add(resolve(lazyIgResource));
+        }
+        return resources;
+    }
+
+    /**
+     * An implementation guide resource that is parsed on first access and then kept.
+     */
+    static class LazyIgResource {
+        private final Supplier<IBaseResource> parser;
+        private volatile IBaseResource resource;
+
+        LazyIgResource(Supplier<IBaseResource> parser) {
+            this.parser = parser;
+        }
+
+        LazyIgResource(IBaseResource resource) {
+            this.parser = null;
+            this.resource = resource;
+        }
+
+        IBaseResource get(AtomicInteger parsedResourceCount) {
+            IBaseResource result = resource;
+            if (result == null) {
+                synchronized (this) {
+                    result = resource;
+                    if (result == null) {
+                        result = parser.get();
+                        resource = result;
+                        parsedResourceCount.incrementAndGet();
+                    }
+                }
+            }
+            return result;
+        }
+    }
+}
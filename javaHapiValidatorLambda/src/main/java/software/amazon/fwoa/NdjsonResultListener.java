@@ -0,0 +1,19 @@
+/*
+ * Copyright Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package software.amazon.fwoa;
+
+import java.io.IOException;
+
+/**
+ * Receives the responses of {@link Validator#validateNdjson(java.io.InputStream, NdjsonResultListener)} in line order, on the calling thread.
+ */
+@FunctionalInterface
+public interface NdjsonResultListener {
+    /**
+     * @param lineNumber 1-based number of the line in the input, blank lines included
+     */
+    void onResult(long lineNumber, ValidatorResponse response) throws IOException;
+}
@@ -0,0 +1,48 @@
+/*
+ * Copyright Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package software.amazon.fwoa;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStream;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+
+/**
+ * Writes NDJSON validation responses as NDJSON, one {@code {"line":..,"successful":..,"errorMessages":[..]}} object per line.
+ * The output stream is flushed but not closed by {@link #close()}.
+ */
+class NdjsonResultWriter implements NdjsonResultListener, Closeable {
+    private static final JsonFactory JSON_FACTORY = new JsonFactory()
+        .disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+
+    private final JsonGenerator generator;
+    private final boolean failuresOnly;
+
+    NdjsonResultWriter(OutputStream output, boolean failuresOnly) throws IOException {
+        this.generator = JSON_FACTORY.createGenerator(output);
+        this.generator.setRootValueSeparator(null);
+        this.failuresOnly = failuresOnly;
+    }
+
+    @Override
+    public void onResult(long lineNumber, ValidatorResponse response) throws IOException {
+        if (failuresOnly && response.isSuccessful()) {
+            return;
+        }
+        generator.writeStartObject();
+        generator.writeNumberField("line", lineNumber);
+        ValidatorResponseJson.writeFields(generator, response);
+        generator.writeEndObject();
+        generator.writeRaw('\n');
+    }
+
+    @Override
+    public void close() throws IOException {
+        generator.close();
+    }
+}
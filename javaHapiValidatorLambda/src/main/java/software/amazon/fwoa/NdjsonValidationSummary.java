@@ -0,0 +1,19 @@
+/*
+ * Copyright Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package software.amazon.fwoa;
+
+import lombok.Builder;
+import lombok.Value;
+
+/**
+ * Totals of an NDJSON validation. Blank lines are skipped and not counted.
+ */
+@Builder
+@Value
+public class NdjsonValidationSummary {
+    private long validatedLines;
+    private long failedLines;
+}
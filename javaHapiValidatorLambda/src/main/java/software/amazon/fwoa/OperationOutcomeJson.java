@@ -0,0 +1,57 @@
+/*
+ * Copyright Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package software.amazon.fwoa;
+
+import java.io.IOException;
+import java.util.Collections;
+import java.util.List;
+import java.util.Objects;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+
+/**
+ * Writes a {@link ValidatorResponse} as a FHIR OperationOutcome with a streaming generator, one issue per message.
+ * The locations of a message go into issue.location, its text into issue.diagnostics.
+ * The OperationOutcome is valid in both STU3 and R4.
+ */
+class OperationOutcomeJson {
+
+    private OperationOutcomeJson() {
+    }
+
+    static void write(JsonGenerator generator, ValidatorResponse response) throws IOException {
+        generator.writeStartObject();
+        generator.writeStringField("resourceType", "OperationOutcome");
+        generator.writeArrayFieldStart("issue");
+        if (response.getErrorMessages().isEmpty()) {
+            // an OperationOutcome has at least one issue
+            writeIssue(generator, "information", "No issues detected during validation", Collections.emptyList());
+        }
+        for (ValidatorErrorMessage errorMessage : response.getErrorMessages()) {
+            writeIssue(generator, errorMessage.getSeverity(), errorMessage.text(), errorMessage.locations());
+        }
+        generator.writeEndArray();
+        generator.writeEndObject();
+    }
+
+    private static void writeIssue(JsonGenerator generator, String severity, String diagnostics, List<String> locations) throws IOException {
+        generator.writeStartObject();
+        generator.writeStringField("severity", severity);
+        generator.writeStringField("code", "information".equals(severity) ? "informational" : "processing");
+        generator.writeStringField("diagnostics", diagnostics);
+        if (locations.stream().anyMatch(Objects::nonNull)) {
+            generator.writeArrayFieldStart("location");
+            for (String location : locations) {
+                // a location the validator could not determine is left out
+                if (location != null) {
+                    generator.writeString(location);
+                }
+            }
+            generator.writeEndArray();
+        }
+        generator.writeEndObject();
+    }
+}
@@ -0,0 +1,157 @@
+/*
+ * Copyright Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package software.amazon.fwoa;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import com.google.common.collect.ImmutableSet;
+
+import org.apache.commons.lang3.StringUtils;
+import org.hl7.fhir.common.hapi.validation.support.BaseValidationSupport;
+import org.hl7.fhir.instance.model.api.IBase;
+import org.hl7.fhir.instance.model.api.IBaseResource;
+import org.hl7.fhir.instance.model.api.IPrimitiveType;
+
+import ca.uhn.fhir.context.BaseRuntimeChildDefinition;
+import ca.uhn.fhir.context.FhirContext;
+import ca.uhn.fhir.context.RuntimeResourceDefinition;
+import ca.uhn.fhir.context.support.DefaultProfileValidationSupport;
+import ca.uhn.fhir.context.support.IValidationSupport;
+
+/**
+ * The base FHIR definitions of DefaultProfileValidationSupport with less heap: the resources are trimmed by {@link ConformanceResourceTrimmer},
+ * and the StructureDefinitions of resources can be limited to some resource types.
+ * The definitions are read once through a DefaultProfileValidationSupport which is then dropped. Unlike DefaultProfileValidationSupport,
+ * they are all loaded when the module is created.
+ */
+class ReducedBaseValidationSupport extends BaseValidationSupport {
+    private static final String URL_PREFIX_STRUCTURE_DEFINITION = "http://hl7.org/fhir/StructureDefinition/";
+    private static final String URL_PREFIX_STRUCTURE_DEFINITION_BASE = "http://hl7.org/fhir/";
+
+    // The abstract base resources are needed by every resource StructureDefinition
+    private static final Set<String> ALWAYS_KEPT_RESOURCE_TYPES = ImmutableSet.of("Resource", "DomainResource");
+
+    private final Map<String, IBaseResource> structureDefinitions;
+    private final Map<String, IBaseResource> valueSets;
+    private final Map<String, IBaseResource> codeSystems;
+
+    private ReducedBaseValidationSupport(FhirContext ctx, Map<String, IBaseResource> structureDefinitions,
+                                         Map<String, IBaseResource> valueSets, Map<String, IBaseResource> codeSystems) {
+        super(ctx);
+        this.structureDefinitions = structureDefinitions;
+        this.valueSets = valueSets;
+        this.codeSystems = codeSystems;
+    }
+
+    /**
+     * @param resourceTypes the resource types whose StructureDefinitions and profiles are kept, or null to keep them all.
+     *                      The data types, extensions and terminology are always kept.
+     */
+    static ReducedBaseValidationSupport load(FhirContext ctx, Set<String> resourceTypes) {
+        ConformanceResourceTrimmer trimmer = new ConformanceResourceTrimmer(ctx);
+        Map<String, IBaseResource> structureDefinitions = new HashMap<>();
+        Map<String, IBaseResource> valueSets = new HashMap<>();
+        Map<String, IBaseResource> codeSystems = new HashMap<>();
+
+        // Keyed by URL like DefaultProfileValidationSupport does
+        for (IBaseResource resource : fetchAllConformanceResources(new DefaultProfileValidationSupport(ctx))) {
+            RuntimeResourceDefinition resourceDefinition = ctx.getResourceDefinition(resource);
+            String url = primitiveValue(resourceDefinition, resource, "url");
+            switch (resourceDefinition.getName()) {
+                case "StructureDefinition":
+                    if (resourceTypes == null || !"resource".equals(primitiveValue(resourceDefinition, resource, "kind"))
+                        || isKept(primitiveValue(resourceDefinition, resource, "type"), resourceTypes)) {
+                        structureDefinitions.put(url, trimmer.trim(resource));
+                    }
+                    break;
+                case "ValueSet":
+                    valueSets.put(url, trimmer.trim(resource));
+                    break;
+                case "CodeSystem":
+                    codeSystems.put(url, trimmer.trim(resource));
+                    break;
+                default:
+                    break;
+            }
+        }
+        return new ReducedBaseValidationSupport(ctx, structureDefinitions, valueSets, codeSystems);
+    }
+
+    int getStructureDefinitionCount() {
+        return structureDefinitions.size();
+    }
+
+    @Override
+    public IBaseResource fetchStructureDefinition(String theUrl) {
+        // Same URL shorthands as DefaultProfileValidationSupport
+        String url = theUrl;
+        if (!url.startsWith(URL_PREFIX_STRUCTURE_DEFINITION)) {
+            if (url.indexOf('/') == -1) {
+                url = URL_PREFIX_STRUCTURE_DEFINITION + url;
+            } else if (StringUtils.countMatches(url, '/') == 1) {
+                url = URL_PREFIX_STRUCTURE_DEFINITION_BASE + url;
+            }
+        }
+        return structureDefinitions.get(url);
+    }
+
+    @Override
+    public IBaseResource fetchValueSet(String theValueSetUrl) {
+        return valueSets.get(withoutNumericVersion(theValueSetUrl));
+    }
+
+    @Override
+    public IBaseResource fetchCodeSystem(String theSystem) {
+        return codeSystems.get(withoutNumericVersion(theSystem));
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public <T extends IBaseResource> List<T> fetchAllStructureDefinitions() {
+        return (List<T>) new ArrayList<>(structureDefinitions.values());
+    }
+
+    @Override
+    public List<IBaseResource> fetchAllConformanceResources() {
+        List<IBaseResource> resources = new ArrayList<>();
+        resources.addAll(codeSystems.values());
+        resources.addAll(valueSets.values());
+        resources.addAll(structureDefinitions.values());
+        return resources;
+    }
+
+    /**
+     * DefaultProfileValidationSupport.fetchAllConformanceResources fails until both the terminology resources and the StructureDefinitions
+     * have been loaded, which the first code system lookup and fetchAllStructureDefinitions do.
+     */
+    static List<IBaseResource> fetchAllConformanceResources(IValidationSupport baseDefinitions) {
+        baseDefinitions.fetchCodeSystem("");
+        baseDefinitions.fetchAllStructureDefinitions();
+        return baseDefinitions.fetchAllConformanceResources();
+    }
+
+    private static boolean isKept(String resourceType, Set<String> resourceTypes) {
+        return ALWAYS_KEPT_RESOURCE_TYPES.contains(resourceType) || resourceTypes.contains(resourceType);
+    }
+
+    // "url|4.0.1" is looked up as "url", like DefaultProfileValidationSupport does
+    private static String withoutNumericVersion(String url) {
+        int versionSeparator = url.indexOf('|');
+        if (versionSeparator != -1 && url.substring(versionSeparator + 1).matches("^[0-9.]+$")) {
+            return url.substring(0, versionSeparator);
+        }
+        return url;
+    }
+
+    private static String primitiveValue(RuntimeResourceDefinition definition, IBase element, String name) {
+        BaseRuntimeChildDefinition child = definition.getChildByName(name);
+        return child.getAccessor().getFirstValueOrNull(element).map(value -> ((IPrimitiveType<?>) value).getValueAsString()).orElse(null);
+    }
+}
@@ -0,0 +1,46 @@
+/*
+ * Copyright Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package software.amazon.fwoa;
+
+import java.io.IOException;
+import java.util.Optional;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+
+/**
+ * Finds the top level resourceType of a JSON resource without building a tree.
+ * Nested objects and arrays are skipped and the scan stops at the resourceType field, which usually comes first.
+ */
+class ResourceTypeSniffer {
+    private static final JsonFactory JSON_FACTORY = new JsonFactory();
+
+    private ResourceTypeSniffer() {
+    }
+
+    static Optional<String> sniff(String resourceAsJsonText) {
+        if (resourceAsJsonText == null) {
+            return Optional.empty();
+        }
+        try (JsonParser parser = JSON_FACTORY.createParser(resourceAsJsonText)) {
+            if (parser.nextToken() != JsonToken.START_OBJECT) {
+                return Optional.empty();
+            }
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                String fieldName = parser.getCurrentName();
+                JsonToken value = parser.nextToken();
+                if ("resourceType".equals(fieldName)) {
+                    return value == JsonToken.VALUE_STRING ? Optional.of(parser.getText()) : Optional.empty();
+                }
+                parser.skipChildren();
+            }
+        } catch (IOException e) {
+            // not JSON, no resource type
+        }
+        return Optional.empty();
+    }
+}
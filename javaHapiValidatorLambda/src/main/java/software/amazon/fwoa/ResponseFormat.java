@@ -0,0 +1,63 @@
+/*
+ * Copyright Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package software.amazon.fwoa;
+
+import java.io.IOException;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+
+/**
+ * JSON encodings of a {@link ValidatorResponse} for the handlers that write their own output.
+ */
+public enum ResponseFormat {
+    /**
+     * The {"successful", "errorMessages"} object returned by the Lambda Handler. The default.
+     */
+    VALIDATOR_RESPONSE("ValidatorResponse") {
+        @Override
+        void write(JsonGenerator generator, ValidatorResponse response) throws IOException {
+            ValidatorResponseJson.write(generator, response);
+        }
+    },
+
+    /**
+     * A FHIR OperationOutcome, one issue per message.
+     */
+    OPERATION_OUTCOME("OperationOutcome") {
+        @Override
+        void write(JsonGenerator generator, ValidatorResponse response) throws IOException {
+            OperationOutcomeJson.write(generator, response);
+        }
+    };
+
+    private final String value;
+
+    ResponseFormat(String value) {
+        this.value = value;
+    }
+
+    abstract void write(JsonGenerator generator, ValidatorResponse response) throws IOException;
+
+    public String getValue() {
+        return value;
+    }
+
+    /**
+     * Parses a format name as used by the format query parameter and the VALIDATION_RESPONSE_FORMAT environment variable.
+     * Null or empty is the default format.
+     */
+    public static ResponseFormat fromValue(String value) {
+        if (value == null || value.isEmpty()) {
+            return VALIDATOR_RESPONSE;
+        }
+        for (ResponseFormat format : values()) {
+            if (format.value.equals(value)) {
+                return format;
+            }
+        }
+        throw new IllegalArgumentException("Invalid response format " + value);
+    }
+}
@@ -0,0 +1,103 @@
+/*
+ * Copyright Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package software.amazon.fwoa;
+
+import java.io.BufferedInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+
+import com.amazonaws.services.lambda.runtime.Context;
+import com.amazonaws.services.lambda.runtime.RequestStreamHandler;
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.google.common.io.ByteStreams;
+
+/**
+ * Stream based variant of {@link Handler} with the same wire contract. Configure the function handler as {@code software.amazon.fwoa.StreamHandler} to use it.
+ * The event is decoded once from the raw bytes instead of being deserialized to a String by the runtime, and the response is written
+ * directly to the output stream instead of being serialized by reflection.
+ * The event is normally the resource encoded as a JSON string. A raw JSON resource is also accepted.
+ * With VALIDATION_RESPONSE_FORMAT set to OperationOutcome, the response is a FHIR OperationOutcome instead.
+ */
+public class StreamHandler implements RequestStreamHandler {
+    private static final JsonFactory JSON_FACTORY = new JsonFactory()
+        .disable(JsonParser.Feature.AUTO_CLOSE_SOURCE)
+        .disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+
+    private final Validator validator;
+    private final ValidationOptions options;
+    private final ResponseFormat format;
+
+    public StreamHandler() {
+        // Same configuration and warm-up as the String based handler
+        this(new Handler());
+    }
+
+    private StreamHandler(Handler handler) {
+        this(handler.getValidator(), handler.getValidationOptions(), ResponseFormat.fromValue(System.getenv("VALIDATION_RESPONSE_FORMAT")));
+    }
+
+    StreamHandler(Validator validator) {
+        this(validator, ValidationOptions.DEFAULT, ResponseFormat.VALIDATOR_RESPONSE);
+    }
+
+    StreamHandler(Validator validator, ValidationOptions options, ResponseFormat format) {
+        this.validator = validator;
+        this.options = options;
+        this.format = format;
+    }
+
+    @Override
+    public void handleRequest(InputStream input, OutputStream output, Context context) throws IOException {
+        writeResponse(validator.validate(readEvent(input), options), output, format);
+    }
+
+    /**
+     * Returns the resource JSON of the event, or null if the event is a malformed JSON string which the validator reports as invalid JSON.
+     */
+    static String readEvent(InputStream input) throws IOException {
+        InputStream event = input.markSupported() ? input : new BufferedInputStream(input);
+        if (!skipToJsonString(event)) {
+            return new String(ByteStreams.toByteArray(event), StandardCharsets.UTF_8);
+        }
+        // Decode the JSON string straight from the stream, the escaped text is never materialized
+        try (JsonParser parser = JSON_FACTORY.createParser(event)) {
+            parser.nextToken();
+            String resourceAsJsonText = parser.getText();
+            return parser.nextToken() == null ? resourceAsJsonText : null;
+        } catch (IOException e) {
+            return null;
+        }
+    }
+
+    static void writeResponse(ValidatorResponse response, OutputStream output) throws IOException {
+        writeResponse(response, output, ResponseFormat.VALIDATOR_RESPONSE);
+    }
+
+    static void writeResponse(ValidatorResponse response, OutputStream output, ResponseFormat format) throws IOException {
+        try (JsonGenerator generator = JSON_FACTORY.createGenerator(output)) {
+            format.write(generator, response);
+        }
+    }
+
+    /**
+     * Skips the leading whitespace and returns whether the event is a JSON string. The stream is left on the first significant byte.
+     */
+    private static boolean skipToJsonString(InputStream event) throws IOException {
+        while (true) {
+            event.mark(1);
+            int b = event.read();
+            if (b != ' ' && b != '\t' && b != '\n' && b != '\r') {
+                event.reset();
+                return b == '"';
+            }
+        }
+    }
+}
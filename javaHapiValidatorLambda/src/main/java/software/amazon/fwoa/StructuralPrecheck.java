@@ -0,0 +1,151 @@
+/*
+ * Copyright Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package software.amazon.fwoa;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Maps;
+
+import ca.uhn.fhir.context.support.IValidationSupport;
+
+/**
+ * Cheap checks run before the full validation: the payload is a JSON object, its resourceType is known,
+ * meta is an object, meta.profile is an array of strings and every profile can be resolved.
+ * The checks read the payload once with a streaming parser. The messages are the ones the full validation reports for the same problems.
+ */
+class StructuralPrecheck {
+    private static final JsonFactory JSON_FACTORY = new JsonFactory();
+
+    private final Set<String> resourceTypes;
+    private final IValidationSupport validationSupport;
+
+    StructuralPrecheck(Set<String> resourceTypes, IValidationSupport validationSupport) {
+        this.resourceTypes = resourceTypes;
+        this.validationSupport = validationSupport;
+    }
+
+    /**
+     * Returns the rejection response if the resource fails the checks, empty if the full validation should run.
+     */
+    Optional<ValidatorResponse> check(String resourceAsJsonText) {
+        if (resourceAsJsonText == null) {
+            return Optional.of(Validator.INVALID_JSON_RESPONSE);
+        }
+        String resourceType = null;
+        boolean knownResourceType = false;
+        List<String> profiles = new ArrayList<>();
+        // Messages about meta, without the resourceType prefix which may come after meta
+        // location below the resource and text of the errors of meta
+        List<Map.Entry<String, String>> metaErrors = new ArrayList<>();
+        try (JsonParser parser = JSON_FACTORY.createParser(resourceAsJsonText)) {
+            if (parser.nextToken() != JsonToken.START_OBJECT) {
+                return Optional.of(Validator.INVALID_JSON_RESPONSE);
+            }
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                String fieldName = parser.getCurrentName();
+                JsonToken value = parser.nextToken();
+                if ("resourceType".equals(fieldName)) {
+                    resourceType = parser.getText();
+                    knownResourceType = value == JsonToken.VALUE_STRING && resourceTypes.contains(resourceType);
+                } else if ("meta".equals(fieldName)) {
+                    if (value == JsonToken.START_OBJECT) {
+                        readProfiles(parser, profiles, metaErrors);
+                    } else {
+                        metaErrors.add(Maps.immutableEntry("meta", "This property must be an Object, not " + describe(value)));
+                    }
+                }
+                parser.skipChildren();
+            }
+            if (parser.nextToken() != null) {
+                return Optional.of(Validator.INVALID_JSON_RESPONSE);
+            }
+        } catch (IOException e) {
+            return Optional.of(Validator.INVALID_JSON_RESPONSE);
+        }
+
+        // The full validation stops at a missing or unknown resourceType as well
+        if (resourceType == null) {
+            return Optional.of(reject(ImmutableList.of(fatal("$", "Unable to find resourceType property"))));
+        }
+        if (!knownResourceType) {
+            return Optional.of(reject(ImmutableList.of(fatal(resourceType, "This does not appear to be a FHIR resource (unknown name '" + resourceType + "')"))));
+        }
+
+        List<ValidatorErrorMessage> errors = new ArrayList<>();
+        for (Map.Entry<String, String> metaError : metaErrors) {
+            errors.add(error(resourceType + "." + metaError.getKey(), metaError.getValue()));
+        }
+        for (int i = 0; i < profiles.size(); i++) {
+            if (profiles.get(i) != null && validationSupport.fetchStructureDefinition(profiles.get(i)) == null) {
+                errors.add(error(resourceType + ".meta.profile[" + i + "]", "Profile reference '" + profiles.get(i) + "' has not been checked because it is unknown"));
+            }
+        }
+        return errors.isEmpty() ? Optional.empty() : Optional.of(reject(errors));
+    }
+
+    /**
+     * Reads meta.profile, the parser is on the start of meta and is left on its end.
+     */
+    private static void readProfiles(JsonParser parser, List<String> profiles, List<Map.Entry<String, String>> metaErrors) throws IOException {
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String fieldName = parser.getCurrentName();
+            JsonToken value = parser.nextToken();
+            if ("profile".equals(fieldName)) {
+                if (value != JsonToken.START_ARRAY) {
+                    metaErrors.add(Maps.immutableEntry("meta.profile", "This property must be an Array, not " + describe(value)));
+                } else {
+                    while ((value = parser.nextToken()) != JsonToken.END_ARRAY) {
+                        if (value == JsonToken.VALUE_STRING) {
+                            profiles.add(parser.getText());
+                        } else {
+                            // keeps the index of the following profiles
+                            profiles.add(null);
+                            metaErrors.add(Maps.immutableEntry("meta.profile", "Error parsing JSON: the primitive value must be a string"));
+                            parser.skipChildren();
+                        }
+                    }
+                }
+            }
+            parser.skipChildren();
+        }
+    }
+
+    private static ValidatorResponse reject(List<ValidatorErrorMessage> errors) {
+        return ValidatorResponse.builder()
+            .isSuccessful(false)
+            .errorMessages(ImmutableList.copyOf(errors))
+            .build();
+    }
+
+    private static String describe(JsonToken token) {
+        switch (token) {
+            case START_OBJECT:
+                return "an object";
+            case START_ARRAY:
+                return "an array";
+            default:
+                return "a primitive property";
+        }
+    }
+
+    private static ValidatorErrorMessage fatal(String location, String text) {
+        return ValidatorErrorMessage.of("fatal", Collections.singletonList(location), text);
+    }
+
+    private static ValidatorErrorMessage error(String location, String text) {
+        return ValidatorErrorMessage.of("error", Collections.singletonList(location), text);
+    }
+}
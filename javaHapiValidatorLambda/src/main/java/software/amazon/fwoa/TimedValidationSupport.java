@@ -0,0 +1,112 @@
+/*
+ * Copyright Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package software.amazon.fwoa;
+
+import java.util.List;
+import java.util.function.Supplier;
+
+import org.hl7.fhir.common.hapi.validation.support.BaseValidationSupportWrapper;
+import org.hl7.fhir.instance.model.api.IBaseResource;
+
+import ca.uhn.fhir.context.FhirContext;
+import ca.uhn.fhir.context.support.ConceptValidationOptions;
+import ca.uhn.fhir.context.support.IValidationSupport;
+import ca.uhn.fhir.context.support.ValidationSupportContext;
+import ca.uhn.fhir.context.support.ValueSetExpansionOptions;
+import software.amazon.fwoa.ValidationPhaseTimings.Phase;
+
+/**
+ * Wraps the validation support chain and adds the time spent in each call to the {@link ValidationPhaseTimings} of the current thread.
+ * Calls made outside of a measured validation are passed through.
+ */
+class TimedValidationSupport extends BaseValidationSupportWrapper {
+
+    TimedValidationSupport(FhirContext ctx, IValidationSupport wrap) {
+        super(ctx, wrap);
+    }
+
+    @Override
+    public List<IBaseResource> fetchAllConformanceResources() {
+        return time(Phase.PROFILE_RESOLUTION, super::fetchAllConformanceResources);
+    }
+
+    @Override
+    public <T extends IBaseResource> List<T> fetchAllStructureDefinitions() {
+        return time(Phase.PROFILE_RESOLUTION, super::fetchAllStructureDefinitions);
+    }
+
+    @Override
+    public <T extends IBaseResource> T fetchResource(Class<T> theClass, String theUri) {
+        return time(Phase.PROFILE_RESOLUTION, () -> super.fetchResource(theClass, theUri));
+    }
+
+    @Override
+    public IBaseResource fetchStructureDefinition(String theUrl) {
+        return time(Phase.PROFILE_RESOLUTION, () -> super.fetchStructureDefinition(theUrl));
+    }
+
+    @Override
+    public IBaseResource fetchValueSet(String theValueSetUrl) {
+        return time(Phase.PROFILE_RESOLUTION, () -> super.fetchValueSet(theValueSetUrl));
+    }
+
+    @Override
+    public IBaseResource fetchCodeSystem(String theSystem) {
+        return time(Phase.PROFILE_RESOLUTION, () -> super.fetchCodeSystem(theSystem));
+    }
+
+    @Override
+    public IBaseResource generateSnapshot(ValidationSupportContext theValidationSupportContext, IBaseResource theInput, String theUrl,
+                                          String theWebUrl, String theProfileName) {
+        return time(Phase.PROFILE_RESOLUTION, () -> super.generateSnapshot(theValidationSupportContext, theInput, theUrl, theWebUrl, theProfileName));
+    }
+
+    @Override
+    public boolean isCodeSystemSupported(ValidationSupportContext theValidationSupportContext, String theSystem) {
+        return time(Phase.TERMINOLOGY, () -> super.isCodeSystemSupported(theValidationSupportContext, theSystem));
+    }
+
+    @Override
+    public boolean isValueSetSupported(ValidationSupportContext theValidationSupportContext, String theValueSetUrl) {
+        return time(Phase.TERMINOLOGY, () -> super.isValueSetSupported(theValidationSupportContext, theValueSetUrl));
+    }
+
+    @Override
+    public CodeValidationResult validateCode(ValidationSupportContext theValidationSupportContext, ConceptValidationOptions theOptions,
+                                             String theCodeSystem, String theCode, String theDisplay, String theValueSetUrl) {
+        return time(Phase.TERMINOLOGY, () -> super.validateCode(theValidationSupportContext, theOptions, theCodeSystem, theCode, theDisplay, theValueSetUrl));
+    }
+
+    @Override
+    public CodeValidationResult validateCodeInValueSet(ValidationSupportContext theValidationSupportContext, ConceptValidationOptions theOptions,
+                                                       String theCodeSystem, String theCode, String theDisplay, IBaseResource theValueSet) {
+        return time(Phase.TERMINOLOGY, () -> super.validateCodeInValueSet(theValidationSupportContext, theOptions, theCodeSystem, theCode, theDisplay, theValueSet));
+    }
+
+    @Override
+    public LookupCodeResult lookupCode(ValidationSupportContext theValidationSupportContext, String theSystem, String theCode) {
+        return time(Phase.TERMINOLOGY, () -> super.lookupCode(theValidationSupportContext, theSystem, theCode));
+    }
+
+    @Override
+    public ValueSetExpansionOutcome expandValueSet(ValidationSupportContext theValidationSupportContext, ValueSetExpansionOptions theExpansionOptions,
+                                                   IBaseResource theValueSetToExpand) {
+        return time(Phase.TERMINOLOGY, () -> super.expandValueSet(theValidationSupportContext, theExpansionOptions, theValueSetToExpand));
+    }
+
+    private static <T> T time(Phase phase, Supplier<T> call) {
+        ValidationPhaseTimings timings = ValidationPhaseTimings.current();
+        if (timings == null) {
+            return call.get();
+        }
+        long start = timings.enter();
+        try {
+            return call.get();
+        } finally {
+            timings.exit(phase, start);
+        }
+    }
+}
@@ -0,0 +1,64 @@
+/*
+ * Copyright Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package software.amazon.fwoa;
+
+import lombok.Builder;
+import lombok.Value;
+
+/**
+ * Measurements of a single {@link Validator#validate(String)} call.
+ * The phase timings add up to at most the total latency, the remainder is spent outside of the validator (cache lookup, resource type detection).
+ */
+@Builder
+@Value
+public class ValidationMetrics {
+    public static final String UNKNOWN_RESOURCE_TYPE = "Unknown";
+
+    private String fhirVersion;
+
+    /**
+     * Top level resourceType of the payload, {@link #UNKNOWN_RESOURCE_TYPE} if it is not a JSON object with the resourceType of
+     * a resource of the FHIR version.
+     */
+    private String resourceType;
+
+    /**
+     * UTF-8 size of the payload.
+     */
+    private long payloadBytes;
+
+    private long totalNanos;
+
+    /**
+     * Time spent fetching StructureDefinitions, ValueSets, CodeSystems and generating snapshots.
+     */
+    private long profileResolutionNanos;
+
+    /**
+     * Time spent validating codes, expanding ValueSets and looking up codes.
+     */
+    private long terminologyNanos;
+
+    /**
+     * Time spent in the HAPI instance validator outside of profile resolution and terminology. This includes parsing the JSON.
+     */
+    private long instanceValidationNanos;
+
+    /**
+     * Time spent converting the HAPI result into the {@link ValidatorResponse}.
+     */
+    private long responseBuildingNanos;
+
+    /**
+     * True when the response came from the validation result cache, in which case all the phase timings are 0.
+     */
+    private boolean cacheHit;
+
+    private boolean successful;
+    private int errorCount;
+    private int warningCount;
+    private int informationCount;
+}
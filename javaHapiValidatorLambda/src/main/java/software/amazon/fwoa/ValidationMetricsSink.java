@@ -0,0 +1,20 @@
+/*
+ * Copyright Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package software.amazon.fwoa;
+
+/**
+ * Receives the {@link ValidationMetrics} of every validation. Implementations are called on the validating thread
+ * and must be thread safe and fast.
+ */
+@FunctionalInterface
+public interface ValidationMetricsSink {
+    /**
+     * Discards the metrics. The validator does not measure anything when this sink is configured.
+     */
+    ValidationMetricsSink NOOP = metrics -> { };
+
+    void record(ValidationMetrics metrics);
+}
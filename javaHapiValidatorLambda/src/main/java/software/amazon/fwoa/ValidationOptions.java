@@ -0,0 +1,57 @@
+/*
+ * Copyright Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package software.amazon.fwoa;
+
+import lombok.Builder;
+import lombok.Value;
+
+/**
+ * Per request options of {@link Validator#validate(String, ValidationOptions)}.
+ */
+@Builder
+@Value
+public class ValidationOptions {
+    /**
+     * Full validation, every message is reported.
+     */
+    public static final ValidationOptions DEFAULT = ValidationOptions.builder().build();
+
+    /**
+     * For write-path gating: structurally broken resources are rejected before the profile validation and only the first error is reported.
+     */
+    public static final ValidationOptions FAIL_FAST = ValidationOptions.builder()
+        .maxErrors(1)
+        .structuralPrecheck(true)
+        .build();
+
+    /**
+     * Maximum number of error and fatal messages in the response. The messages that come after the last reported error are dropped.
+     * 0 reports all the messages.
+     */
+    @Builder.Default
+    private int maxErrors = 0;
+
+    /**
+     * Check the JSON shape, the resourceType and that the meta.profile URLs can be resolved before running the full validation.
+     * A resource that fails the check is rejected with the check errors only.
+     */
+    @Builder.Default
+    private boolean structuralPrecheck = false;
+
+    /**
+     * Report the messages with the same severity and text once, with all their locations: "location1, location2 - text".
+     * A Bundle with the same defect in every entry then gets one message instead of one per entry.
+     */
+    @Builder.Default
+    private boolean groupMessages = false;
+
+    /**
+     * Maximum number of messages in the response, after grouping. The messages beyond it are dropped and counted in a
+     * last information message. 0 reports all the messages.
+     */
+    @Builder.Default
+    private int maxMessages = 0;
+}
@@ -0,0 +1,97 @@
+/*
+ * Copyright Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package software.amazon.fwoa;
+
+/**
+ * Phase timings of the validation running on the current thread. The HAPI validator does not expose its phases,
+ * they are collected by {@link TimedValidationSupport} around the validation support calls.
+ */
+class ValidationPhaseTimings {
+    private static final ThreadLocal<ValidationPhaseTimings> CURRENT = new ThreadLocal<>();
+
+    enum Phase {
+        PROFILE_RESOLUTION,
+        TERMINOLOGY
+    }
+
+    private long profileResolutionNanos;
+    private long terminologyNanos;
+    private long validatorNanos;
+    private long responseBuildingNanos;
+    private boolean validated;
+
+    // Support calls are nested (the chain calls back into itself), only the outermost call is timed
+    private int depth;
+
+    /**
+     * Starts collecting the timings of the current thread. The previously collected timings, if any, are returned so that they can be restored.
+     */
+    static ValidationPhaseTimings start(ValidationPhaseTimings timings) {
+        ValidationPhaseTimings previous = CURRENT.get();
+        CURRENT.set(timings);
+        return previous;
+    }
+
+    static void restore(ValidationPhaseTimings previous) {
+        if (previous == null) {
+            CURRENT.remove();
+        } else {
+            CURRENT.set(previous);
+        }
+    }
+
+    /**
+     * Timings of the current thread, null if they are not being collected.
+     */
+    static ValidationPhaseTimings current() {
+        return CURRENT.get();
+    }
+
+    /**
+     * Returns the start time to pass to {@link #exit(Phase, long)}.
+     */
+    long enter() {
+        depth++;
+        return System.nanoTime();
+    }
+
+    void exit(Phase phase, long startNanos) {
+        if (--depth == 0) {
+            long nanos = System.nanoTime() - startNanos;
+            if (phase == Phase.PROFILE_RESOLUTION) {
+                profileResolutionNanos += nanos;
+            } else {
+                terminologyNanos += nanos;
+            }
+        }
+    }
+
+    void validated(long validatorNanos, long responseBuildingNanos) {
+        this.validated = true;
+        this.validatorNanos += validatorNanos;
+        this.responseBuildingNanos += responseBuildingNanos;
+    }
+
+    boolean isValidated() {
+        return validated;
+    }
+
+    long getProfileResolutionNanos() {
+        return profileResolutionNanos;
+    }
+
+    long getTerminologyNanos() {
+        return terminologyNanos;
+    }
+
+    long getInstanceValidationNanos() {
+        return Math.max(0, validatorNanos - profileResolutionNanos - terminologyNanos);
+    }
+
+    long getResponseBuildingNanos() {
+        return responseBuildingNanos;
+    }
+}
@@ -0,0 +1,121 @@
+/*
+ * Copyright Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package software.amazon.fwoa;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheStats;
+
+import org.apache.commons.codec.digest.DigestUtils;
+
+/**
+ * Cache of validation responses keyed by a hash of the normalized resource JSON, the validation options, the FHIR version and the loaded implementation guides.
+ * Normalization only removes insignificant whitespace. Field order, duplicated fields and the text of numbers are kept
+ * so that a cached response is always identical to the response the validator would produce.
+ */
+class ValidationResultCache {
+    private static final JsonFactory JSON_FACTORY = new JsonFactory();
+
+    private final Cache<String, ValidatorResponse> cache;
+    private final String keyPrefix;
+
+    ValidationResultCache(long maximumSize, long ttlSeconds, String fhirVersion, String igFingerprint) {
+        this.cache = CacheBuilder.newBuilder()
+            .maximumSize(maximumSize)
+            .expireAfterWrite(ttlSeconds, TimeUnit.SECONDS)
+            .recordStats()
+            .build();
+        this.keyPrefix = fhirVersion + "\n" + igFingerprint + "\n";
+    }
+
+    ValidatorResponse get(String resourceAsJsonText, ValidationOptions options, Function<String, ValidatorResponse> validate) {
+        String key = key(resourceAsJsonText, options);
+        if (key == null) {
+            // Not parsable. Invalid JSON is cheap to validate and not worth caching
+            return validate.apply(resourceAsJsonText);
+        }
+        ValidatorResponse response = cache.getIfPresent(key);
+        if (response == null) {
+            response = validate.apply(resourceAsJsonText);
+            cache.put(key, response);
+        }
+        return response;
+    }
+
+    CacheStats stats() {
+        return cache.stats();
+    }
+
+    long size() {
+        return cache.size();
+    }
+
+    private String key(String resourceAsJsonText, ValidationOptions options) {
+        if (resourceAsJsonText == null) {
+            return null;
+        }
+        StringWriter normalized = new StringWriter(resourceAsJsonText.length());
+        normalized.write(keyPrefix);
+        normalized.write(options.toString());
+        normalized.write('\n');
+        try (JsonParser parser = JSON_FACTORY.createParser(resourceAsJsonText);
+             JsonGenerator generator = JSON_FACTORY.createGenerator(normalized)) {
+            copyTokens(parser, generator);
+        } catch (IOException e) {
+            return null;
+        }
+        return DigestUtils.sha256Hex(normalized.toString());
+    }
+
+    private static void copyTokens(JsonParser parser, JsonGenerator generator) throws IOException {
+        JsonToken token;
+        while ((token = parser.nextToken()) != null) {
+            switch (token) {
+                case START_OBJECT:
+                    generator.writeStartObject();
+                    break;
+                case END_OBJECT:
+                    generator.writeEndObject();
+                    break;
+                case START_ARRAY:
+                    generator.writeStartArray();
+                    break;
+                case END_ARRAY:
+                    generator.writeEndArray();
+                    break;
+                case FIELD_NAME:
+                    generator.writeFieldName(parser.getCurrentName());
+                    break;
+                case VALUE_STRING:
+                    generator.writeString(parser.getText());
+                    break;
+                case VALUE_NUMBER_INT:
+                case VALUE_NUMBER_FLOAT:
+                    // keep the original text, "1.50" and "1.5" are not the same FHIR decimal
+                    generator.writeNumber(parser.getText());
+                    break;
+                case VALUE_TRUE:
+                case VALUE_FALSE:
+                    generator.writeBoolean(token == JsonToken.VALUE_TRUE);
+                    break;
+                case VALUE_NULL:
+                    generator.writeNull();
+                    break;
+                default:
+                    throw new IOException("Unexpected JSON token " + token);
+            }
+        }
+    }
+}
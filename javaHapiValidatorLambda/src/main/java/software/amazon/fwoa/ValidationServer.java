@@ -0,0 +1,504 @@
+/*
+ * Copyright Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package software.amazon.fwoa;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UnsupportedEncodingException;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.google.common.base.Splitter;
+import com.google.common.cache.CacheStats;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Maps;
+import com.google.common.io.ByteStreams;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Long-running HTTP server for container deployments, exposing the validator without the Lambda runtime:
+ * <ul>
+ *   <li>POST /validate validates the resource in the body and returns the same response as the Lambda Handler.
+ *   Query parameters: failFast=true, maxErrors=&lt;n&gt;, precheck=true, groupMessages=true, maxMessages=&lt;n&gt;, see {@link ValidationOptions},
+ *   and format=OperationOutcome to get a FHIR OperationOutcome instead, see {@link ResponseFormat}.</li>
+ *   <li>POST /validate/batch validates a JSON array of resources or a Bundle and returns an array of responses, see {@link Validator#validateBatch}.
+ *   It accepts the same query parameters, the validation options apply to each resource. The resources are validated one after the other
+ *   by the worker thread of the request, so that a batch takes a single worker and a single validator like any other request.</li>
+ *   <li>Both accept implementationGuides=&lt;folder&gt; to validate with one of the configured implementation guide sets instead of the default
+ *   implementation guides, see {@link ValidationServerConfig#getImplementationGuideSets()}.</li>
+ *   <li>GET /health returns the pool and queue state. It is answered right away, even when the queue is full.</li>
+ * </ul>
+ * Validations run on a bounded pool of worker threads in front of a bounded queue. Requests received when the queue is full are
+ * rejected with 503 Service Unavailable and a Retry-After header instead of piling up, so that the latency of accepted requests stays bounded.
+ * <pre>
+ * java -cp fwoa-hapi-validator-dev.jar software.amazon.fwoa.ValidationServer
+ * </pre>
+ * The server is configured with the environment variables PORT, FHIR_VERSION, VALIDATION_SERVER_THREADS, VALIDATION_SERVER_QUEUE_CAPACITY,
+ * VALIDATION_SERVER_VALIDATORS, VALIDATION_SERVER_MAX_REQUEST_BYTES, VALIDATION_SERVER_WARM_UP, VALIDATION_SERVER_IG_RELOAD_SECONDS,
+ * VALIDATION_SERVER_IG_SETS (comma separated folders), VALIDATION_SERVER_IG_SETS_MEMORY_MB, IMPLEMENTATION_GUIDES_DIRECTORY
+ * and the VALIDATION_* variables of the {@link Handler}.
+ * <p>
+ * With IMPLEMENTATION_GUIDES_DIRECTORY, the implementation guides are read from &lt;directory&gt;/implementationGuides instead of the jar,
+ * and with VALIDATION_SERVER_IG_RELOAD_SECONDS they are reloaded without a restart when their .index.json files change,
+ * see {@link ImplementationGuidesReloader}.
+ */
+@Slf4j
+public class ValidationServer implements AutoCloseable {
+    private static final JsonFactory JSON_FACTORY = new JsonFactory();
+    private static final int RETRY_AFTER_SECONDS = 1;
+
+    private final ValidationServerConfig config;
+    private final ImplementationGuidesReloader validatorPools;
+    // null without implementation guide sets
+    private final ValidatorRegistry validatorRegistry;
+    private final ThreadPoolExecutor workers;
+    private final HttpServer server;
+    private final AtomicLong rejectedRequests = new AtomicLong();
+
+    public ValidationServer(ValidationServerConfig config) throws IOException {
+        this.config = config;
+        // The reloaded validators are warmed up by the single reloader thread, before they replace the current ones
+        this.validatorPools = new ImplementationGuidesReloader(newValidatorPool(), currentPool -> {
+            ValidatorPool validatorPool = currentPool.rebuild();
+            if (config.isWarmUp()) {
+                warmUp(validatorPool, 1);
+            }
+            return validatorPool;
+        }, config.getIgReloadIntervalSeconds());
+        this.validatorRegistry = config.getImplementationGuideSets().isEmpty()
+            ? null
+            : new ValidatorRegistry(config.getValidatorConfig(), config.getImplementationGuideSetsMemoryMegabytes());
+
+        BlockingQueue<Runnable> queue = config.getQueueCapacity() > 0 ? new ArrayBlockingQueue<>(config.getQueueCapacity()) : new SynchronousQueue<>();
+        workers = new ThreadPoolExecutor(config.getWorkerThreads(), config.getWorkerThreads(), 0, TimeUnit.MILLISECONDS, queue,
+            new ThreadFactoryBuilder().setNameFormat("validation-worker-%d").build());
+
+        // The HTTP dispatcher thread only parses the request line and hands the exchange over to the workers,
+        // so that it keeps accepting connections and can answer 503 when the workers are saturated.
+        server = HttpServer.create(new InetSocketAddress(config.getPort()), 0);
+        server.createContext("/validate", exchange -> dispatch(exchange, "/validate", "POST", this::validate));
+        server.createContext("/validate/batch", exchange -> dispatch(exchange, "/validate/batch", "POST", this::validateBatch));
+        server.createContext("/health", exchange -> {
+            if (checkRoute(exchange, "/health", "GET")) {
+                handle(exchange, this::health);
+            }
+        });
+    }
+
+    public static void main(String[] args) throws IOException {
+        String implementationGuideSets = System.getenv("VALIDATION_SERVER_IG_SETS");
+        ValidationServerConfig config = ValidationServerConfig.builder()
+            .port((int) Handler.getLongEnv("PORT", ValidationServerConfig.DEFAULT.getPort()))
+            .fhirVersion(System.getenv("FHIR_VERSION") != null ? System.getenv("FHIR_VERSION") : Validator.FHIR_R4)
+            .workerThreads((int) Handler.getLongEnv("VALIDATION_SERVER_THREADS", ValidationServerConfig.DEFAULT.getWorkerThreads()))
+            .queueCapacity((int) Handler.getLongEnv("VALIDATION_SERVER_QUEUE_CAPACITY", ValidationServerConfig.DEFAULT.getQueueCapacity()))
+            .validatorPoolSize((int) Handler.getLongEnv("VALIDATION_SERVER_VALIDATORS", ValidationServerConfig.DEFAULT.getValidatorPoolSize()))
+            .maxRequestBytes((int) Handler.getLongEnv("VALIDATION_SERVER_MAX_REQUEST_BYTES", ValidationServerConfig.DEFAULT.getMaxRequestBytes()))
+            .warmUp(!"false".equalsIgnoreCase(System.getenv("VALIDATION_SERVER_WARM_UP")))
+            .igReloadIntervalSeconds(Handler.getLongEnv("VALIDATION_SERVER_IG_RELOAD_SECONDS", ValidationServerConfig.DEFAULT.getIgReloadIntervalSeconds()))
+            .implementationGuideSets(implementationGuideSets == null
+                ? ImmutableSet.of()
+                : ImmutableSet.copyOf(Splitter.on(',').trimResults().omitEmptyStrings().split(implementationGuideSets)))
+            .implementationGuideSetsMemoryMegabytes(Handler.getLongEnv("VALIDATION_SERVER_IG_SETS_MEMORY_MB",
+                ValidationServerConfig.DEFAULT.getImplementationGuideSetsMemoryMegabytes()))
+            .validatorConfig(Handler.validatorConfigFromEnvironment()
+                .implementationGuidesDirectory(System.getenv("IMPLEMENTATION_GUIDES_DIRECTORY"))
+                .build())
+            .build();
+
+        ValidationServer validationServer = new ValidationServer(config);
+        Runtime.getRuntime().addShutdownHook(new Thread(validationServer::close));
+        validationServer.start();
+    }
+
+    /**
+     * Warms up the validators if configured to, then starts accepting requests.
+     */
+    public void start() {
+        if (config.isWarmUp()) {
+            warmUp(validatorPools.get(), config.getWorkerThreads());
+        }
+        server.start();
+        log.info("Validation server listening on port {} with {} worker threads, a queue of {} requests and {} validators",
+            getPort(), config.getWorkerThreads(), config.getQueueCapacity(), config.getValidatorPoolSize());
+    }
+
+    public int getPort() {
+        return server.getAddress().getPort();
+    }
+
+    @Override
+    public void close() {
+        server.stop(0);
+        workers.shutdown();
+        validatorPools.close();
+        if (validatorRegistry != null) {
+            validatorRegistry.close();
+        }
+    }
+
+    ThreadPoolExecutor getWorkers() {
+        return workers;
+    }
+
+    ImplementationGuidesReloader getValidatorPools() {
+        return validatorPools;
+    }
+
+    private ValidatorPool newValidatorPool() {
+        return new ValidatorPool(config.getFhirVersion(), config.getImplementationGuidesFolder(), config.getValidatorConfig(), config.getValidatorPoolSize());
+    }
+
+    private void warmUp(ValidatorPool validatorPool, int threads) {
+        List<Validator> validators = validatorPool.getValidators();
+        List<String> corpus = WarmUpCorpus.fromEnvironment(validators.get(0));
+        log.info("Validating {} warm-up resources with each of the {} validators", corpus.size(), validators.size());
+        long start = System.nanoTime();
+
+        ExecutorService warmUpExecutor = Executors.newFixedThreadPool(Math.min(threads, validators.size()));
+        try {
+            List<Future<?>> futures = new ArrayList<>();
+            for (Validator validator : validators) {
+                futures.add(warmUpExecutor.submit(() -> corpus.forEach(validator::validate)));
+            }
+            for (Future<?> future : futures) {
+                future.get();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException(e);
+        } catch (ExecutionException e) {
+            throw new RuntimeException(e.getCause());
+        } finally {
+            warmUpExecutor.shutdown();
+        }
+        log.info("Warm-up took {} ms", TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+    }
+
+    private void dispatch(HttpExchange exchange, String path, String method, ExchangeHandler handler) {
+        if (!checkRoute(exchange, path, method)) {
+            return;
+        }
+        try {
+            workers.execute(() -> handle(exchange, handler));
+        } catch (RejectedExecutionException e) {
+            rejectedRequests.incrementAndGet();
+            exchange.getResponseHeaders().set("Retry-After", String.valueOf(RETRY_AFTER_SECONDS));
+            handle(exchange, x -> sendError(x, 503, "Too many requests in progress, retry later"));
+        }
+    }
+
+    private boolean checkRoute(HttpExchange exchange, String path, String method) {
+        // contexts match by path prefix, e.g. /validateX would be routed to /validate
+        if (!exchange.getRequestURI().getPath().equals(path)) {
+            handle(exchange, x -> sendError(x, 404, "Not found"));
+            return false;
+        }
+        if (!exchange.getRequestMethod().equals(method)) {
+            exchange.getResponseHeaders().set("Allow", method);
+            handle(exchange, x -> sendError(x, 405, "Method not allowed"));
+            return false;
+        }
+        return true;
+    }
+
+    private void handle(HttpExchange exchange, ExchangeHandler handler) {
+        try {
+            handler.handle(exchange);
+        } catch (Exception e) {
+            log.error("Failed to handle {} {}", exchange.getRequestMethod(), exchange.getRequestURI(), e);
+            try {
+                sendError(exchange, 500, "Internal error");
+            } catch (IOException | RuntimeException ignored) {
+                // the response headers were already sent
+            }
+        } finally {
+            exchange.close();
+        }
+    }
+
+    private void validate(HttpExchange exchange) throws IOException {
+        ValidationOptions options = parseOptions(exchange);
+        if (options == null) {
+            return;
+        }
+        ResponseFormat format = parseFormat(exchange);
+        if (format == null) {
+            return;
+        }
+        String implementationGuides = parseImplementationGuides(exchange);
+        if (implementationGuides == null) {
+            return;
+        }
+        String body = readBody(exchange);
+        if (body == null) {
+            sendError(exchange, 413, "The request body exceeds " + config.getMaxRequestBytes() + " bytes");
+            return;
+        }
+        ValidatorResponse response = applyValidator(implementationGuides, validator -> validator.validate(body, options));
+        sendJson(exchange, 200, generator -> format.write(generator, response));
+    }
+
+    private void validateBatch(HttpExchange exchange) throws IOException {
+        ValidationOptions options = parseOptions(exchange);
+        if (options == null) {
+            return;
+        }
+        ResponseFormat format = parseFormat(exchange);
+        if (format == null) {
+            return;
+        }
+        String implementationGuides = parseImplementationGuides(exchange);
+        if (implementationGuides == null) {
+            return;
+        }
+        String body = readBody(exchange);
+        if (body == null) {
+            sendError(exchange, 413, "The request body exceeds " + config.getMaxRequestBytes() + " bytes");
+            return;
+        }
+        List<ValidatorResponse> responses = applyValidator(implementationGuides, validator -> validator.validateBatchSequentially(body, options));
+        sendJson(exchange, 200, generator -> {
+            generator.writeStartArray();
+            for (ValidatorResponse response : responses) {
+                format.write(generator, response);
+            }
+            generator.writeEndArray();
+        });
+    }
+
+    /**
+     * Runs the function with a validator of the default implementation guides pool, or of the registry for another implementation guide set.
+     */
+    private <T> T applyValidator(String implementationGuides, Function<Validator, T> function) {
+        return implementationGuides.equals(config.getImplementationGuidesFolder())
+            ? validatorPools.apply(function)
+            : validatorRegistry.apply(config.getFhirVersion(), implementationGuides, function);
+    }
+
+    private void health(HttpExchange exchange) throws IOException {
+        ValidatorPool validatorPool = validatorPools.get();
+        sendJson(exchange, 200, generator -> {
+            generator.writeStartObject();
+            generator.writeStringField("status", "UP");
+            generator.writeStringField("fhirVersion", config.getFhirVersion());
+            generator.writeStringField("igFingerprint", validatorPool.getIgFingerprint());
+            generator.writeNumberField("validators", validatorPool.size());
+            generator.writeNumberField("availableValidators", validatorPool.availableCount());
+            generator.writeNumberField("activeRequests", workers.getActiveCount());
+            generator.writeNumberField("queuedRequests", workers.getQueue().size());
+            generator.writeNumberField("queueCapacity", config.getQueueCapacity());
+            generator.writeNumberField("rejectedRequests", rejectedRequests.get());
+            if (validatorRegistry != null) {
+                CacheStats stats = validatorRegistry.stats();
+                generator.writeObjectFieldStart("implementationGuideSets");
+                generator.writeNumberField("validators", validatorRegistry.size());
+                generator.writeNumberField("estimatedBytes", validatorRegistry.estimatedBytes());
+                generator.writeNumberField("hits", stats.hitCount());
+                generator.writeNumberField("loads", stats.loadCount());
+                generator.writeNumberField("evictions", stats.evictionCount());
+                generator.writeEndObject();
+            }
+            generator.writeEndObject();
+        });
+    }
+
+    /**
+     * Returns null when the body is larger than the limit.
+     */
+    private String readBody(HttpExchange exchange) throws IOException {
+        try (InputStream in = exchange.getRequestBody()) {
+            byte[] body = ByteStreams.toByteArray(ByteStreams.limit(in, config.getMaxRequestBytes() + 1L));
+            return body.length > config.getMaxRequestBytes() ? null : new String(body, StandardCharsets.UTF_8);
+        }
+    }
+
+    /**
+     * The parameters of a raw query string, in order, with their names and values URL-decoded. A parameter without '=' has an empty value.
+     *
+     * @throws IllegalArgumentException for a malformed escape sequence
+     */
+    static List<Map.Entry<String, String>> parseQuery(String query) {
+        List<Map.Entry<String, String>> parameters = new ArrayList<>();
+        if (query == null || query.isEmpty()) {
+            return parameters;
+        }
+        for (String parameter : query.split("&")) {
+            int separator = parameter.indexOf('=');
+            String name = separator < 0 ? parameter : parameter.substring(0, separator);
+            String value = separator < 0 ? "" : parameter.substring(separator + 1);
+            parameters.add(Maps.immutableEntry(decode(name), decode(value)));
+        }
+        return parameters;
+    }
+
+    private static String decode(String text) {
+        try {
+            return URLDecoder.decode(text, "UTF-8");
+        } catch (UnsupportedEncodingException e) {
+            // UTF-8 is always supported
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * The value of the first parameter with the name, or null without it.
+     */
+    private static String queryParameter(String query, String name) {
+        return parseQuery(query).stream()
+            .filter(parameter -> parameter.getKey().equals(name))
+            .map(Map.Entry::getValue)
+            .findFirst()
+            .orElse(null);
+    }
+
+    static ValidationOptions parseOptions(String query) {
+        List<Map.Entry<String, String>> parameters = parseQuery(query);
+        if (parameters.isEmpty()) {
+            return ValidationOptions.DEFAULT;
+        }
+        ValidationOptions.ValidationOptionsBuilder options = ValidationOptions.builder();
+        for (Map.Entry<String, String> parameter : parameters) {
+            String value = parameter.getValue();
+            switch (parameter.getKey()) {
+                case "failFast":
+                    if (Boolean.parseBoolean(value)) {
+                        options.maxErrors(ValidationOptions.FAIL_FAST.getMaxErrors()).structuralPrecheck(ValidationOptions.FAIL_FAST.isStructuralPrecheck());
+                    }
+                    break;
+                case "maxErrors":
+                    options.maxErrors(Integer.parseInt(value));
+                    break;
+                case "precheck":
+                    options.structuralPrecheck(Boolean.parseBoolean(value));
+                    break;
+                case "groupMessages":
+                    options.groupMessages(Boolean.parseBoolean(value));
+                    break;
+                case "maxMessages":
+                    options.maxMessages(Integer.parseInt(value));
+                    break;
+                default:
+                    // unknown parameters are ignored
+                    break;
+            }
+        }
+        return options.build();
+    }
+
+    /**
+     * Returns the validation options, or null once the request has been rejected with 400 Bad Request for an invalid query.
+     */
+    private static ValidationOptions parseOptions(HttpExchange exchange) throws IOException {
+        try {
+            return parseOptions(exchange.getRequestURI().getRawQuery());
+        } catch (NumberFormatException e) {
+            sendError(exchange, 400, "Invalid maxErrors or maxMessages query parameter");
+            return null;
+        } catch (IllegalArgumentException e) {
+            sendError(exchange, 400, "Invalid query: " + e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * The format query parameter, or the default format without it.
+     */
+    static ResponseFormat parseFormat(String query) {
+        String format = queryParameter(query, "format");
+        return format == null ? ResponseFormat.VALIDATOR_RESPONSE : ResponseFormat.fromValue(format);
+    }
+
+    /**
+     * The implementationGuides query parameter, or null without it.
+     */
+    static String parseImplementationGuides(String query) {
+        return queryParameter(query, "implementationGuides");
+    }
+
+    /**
+     * Returns the implementation guides folder to validate with, the default one without the implementationGuides query parameter,
+     * or null once the request has been rejected with 400 Bad Request for a folder that is not one of the implementation guide sets.
+     */
+    private String parseImplementationGuides(HttpExchange exchange) throws IOException {
+        String implementationGuides = parseImplementationGuides(exchange.getRequestURI().getRawQuery());
+        if (implementationGuides == null || implementationGuides.equals(config.getImplementationGuidesFolder())) {
+            return config.getImplementationGuidesFolder();
+        }
+        // only the configured folders, so that requests can neither read other folders nor fill the registry
+        if (!config.getImplementationGuideSets().contains(implementationGuides)) {
+            sendError(exchange, 400, "Unknown implementation guides " + implementationGuides);
+            return null;
+        }
+        return implementationGuides;
+    }
+
+    /**
+     * Returns the requested format, or null once the request has been rejected with 400 Bad Request for an unknown format.
+     */
+    private static ResponseFormat parseFormat(HttpExchange exchange) throws IOException {
+        try {
+            return parseFormat(exchange.getRequestURI().getRawQuery());
+        } catch (IllegalArgumentException e) {
+            sendError(exchange, 400, e.getMessage());
+            return null;
+        }
+    }
+
+    private static void sendError(HttpExchange exchange, int status, String message) throws IOException {
+        sendJson(exchange, status, generator -> {
+            generator.writeStartObject();
+            generator.writeStringField("error", message);
+            generator.writeEndObject();
+        });
+    }
+
+    private static void sendJson(HttpExchange exchange, int status, JsonWriter writer) throws IOException {
+        ByteArrayOutputStream body = new ByteArrayOutputStream();
+        try (JsonGenerator generator = JSON_FACTORY.createGenerator(body)) {
+            writer.write(generator);
+        }
+        exchange.getResponseHeaders().set("Content-Type", "application/json");
+        exchange.sendResponseHeaders(status, body.size());
+        try (OutputStream out = exchange.getResponseBody()) {
+            body.writeTo(out);
+        }
+    }
+
+    @FunctionalInterface
+    private interface ExchangeHandler {
+        void handle(HttpExchange exchange) throws IOException;
+    }
+
+    @FunctionalInterface
+    private interface JsonWriter {
+        void write(JsonGenerator generator) throws IOException;
+    }
+}
@@ -0,0 +1,86 @@
+/*
+ * Copyright Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package software.amazon.fwoa;
+
+import java.util.Set;
+
+import com.google.common.collect.ImmutableSet;
+
+import lombok.Builder;
+import lombok.Value;
+
+/**
+ * Settings of a {@link ValidationServer}. The defaults size the server to the cores of the host.
+ */
+@Builder
+@Value
+public class ValidationServerConfig {
+    public static final ValidationServerConfig DEFAULT = ValidationServerConfig.builder().build();
+
+    /**
+     * Port to listen on. 0 picks a free port.
+     */
+    @Builder.Default
+    private int port = 8080;
+
+    @Builder.Default
+    private String fhirVersion = Validator.FHIR_R4;
+
+    @Builder.Default
+    private String implementationGuidesFolder = Validator.DEFAULT_IMPLEMENTATION_GUIDES_FOLDER;
+
+    /**
+     * Number of requests validated concurrently. Validation is CPU bound, more threads than cores only add latency.
+     */
+    @Builder.Default
+    private int workerThreads = Runtime.getRuntime().availableProcessors();
+
+    /**
+     * Number of requests waiting for a worker thread. Requests received when the queue is full are rejected with 503 Service Unavailable.
+     */
+    @Builder.Default
+    private int queueCapacity = 4 * Runtime.getRuntime().availableProcessors();
+
+    /**
+     * Number of validators, one per worker thread by default.
+     */
+    @Builder.Default
+    private int validatorPoolSize = Runtime.getRuntime().availableProcessors();
+
+    /**
+     * Larger request bodies are rejected with 413 Payload Too Large.
+     */
+    @Builder.Default
+    private int maxRequestBytes = 10 * 1024 * 1024;
+
+    /**
+     * Validate the warm-up corpus with every validator before accepting requests.
+     */
+    @Builder.Default
+    private boolean warmUp = true;
+
+    /**
+     * Interval at which the implementation guides are checked for changes and reloaded. 0 disables the reload.
+     */
+    @Builder.Default
+    private long igReloadIntervalSeconds = 0;
+
+    /**
+     * Other implementation guides folders that requests can select with the implementationGuides query parameter, e.g. one per tenant.
+     * Their validators are built on first use and shared by the worker threads, see {@link ValidatorRegistry}.
+     */
+    @Builder.Default
+    private Set<String> implementationGuideSets = ImmutableSet.of();
+
+    /**
+     * Estimated memory of the validators of the implementation guide sets, the least recently used ones are evicted beyond it.
+     */
+    @Builder.Default
+    private long implementationGuideSetsMemoryMegabytes = 1024;
+
+    @Builder.Default
+    private ValidatorConfig validatorConfig = ValidatorConfig.DEFAULT;
+}
@@ -5,60 +5,89 @@
 
 package software.amazon.fwoa;
 
-import static org.apache.commons.lang3.StringUtils.isNotBlank;
-
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
 import java.io.InputStream;
-import java.util.HashMap;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.Objects;
 import java.util.Optional;
+import java.util.Set;
+import java.util.SortedMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.Function;
 import java.util.stream.Collectors;
 
+import com.google.common.cache.CacheStats;
+import com.google.common.base.Utf8;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableSet;
-import com.google.gson.Gson;
+import com.google.common.collect.ListMultimap;
+import com.google.common.collect.Maps;
+import com.google.common.collect.MultimapBuilder;
+import com.google.common.collect.Multimaps;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
 import com.google.gson.JsonSyntaxException;
 
-import org.apache.commons.lang3.Validate;
 import org.hl7.fhir.common.hapi.validation.support.CommonCodeSystemsTerminologyService;
 import org.hl7.fhir.common.hapi.validation.support.InMemoryTerminologyServerValidationSupport;
-import org.hl7.fhir.common.hapi.validation.support.PrePopulatedValidationSupport;
 import org.hl7.fhir.common.hapi.validation.support.ValidationSupportChain;
 import org.hl7.fhir.common.hapi.validation.validator.FhirInstanceValidator;
-import org.hl7.fhir.instance.model.api.IBase;
-import org.hl7.fhir.instance.model.api.IBaseResource;
-import org.hl7.fhir.instance.model.api.IPrimitiveType;
-import org.hl7.fhir.r4.model.CodeSystem;
-import org.hl7.fhir.r4.model.StructureDefinition;
-import org.hl7.fhir.r4.model.ValueSet;
+import org.hl7.fhir.exceptions.FHIRFormatError;
 
 import ca.uhn.fhir.context.FhirContext;
-import ca.uhn.fhir.context.RuntimeResourceDefinition;
 import ca.uhn.fhir.context.support.DefaultProfileValidationSupport;
-import ca.uhn.fhir.parser.IParser;
-import ca.uhn.fhir.parser.StrictErrorHandler;
+import ca.uhn.fhir.context.support.IValidationSupport;
 import ca.uhn.fhir.rest.server.exceptions.InvalidRequestException;
 import ca.uhn.fhir.validation.FhirValidator;
+import ca.uhn.fhir.validation.ResultSeverityEnum;
+import ca.uhn.fhir.validation.SingleValidationMessage;
 import ca.uhn.fhir.validation.ValidationResult;
-import io.github.classgraph.ClassGraph;
-import io.github.classgraph.Resource;
-import io.github.classgraph.ResourceList;
-import io.github.classgraph.ScanResult;
+import lombok.Value;
 import lombok.extern.slf4j.Slf4j;
-import software.amazon.fwoa.models.IgFile;
-import software.amazon.fwoa.models.IgIndex;
 
 /**
  * This class is a wrapper around the HAPI FhirValidator.
  * The FhirValidator is built using default settings and the available implementation guides are loaded into it.
  */
 @Slf4j
-public class Validator {
-    private static final Gson GSON = new Gson();
+public class Validator implements AutoCloseable {
     public static final String DEFAULT_IMPLEMENTATION_GUIDES_FOLDER = "implementationGuides";
     public static final String FHIR_R4 = "4.0.1";
     public static final String FHIR_STU3 = "3.0.1";
 
+    // Number of NDJSON lines in flight per batch thread. Bounds the memory used by validateNdjson regardless of the input size
+    private static final int NDJSON_LINES_IN_FLIGHT_PER_THREAD = 4;
+
+    static final ValidatorResponse INVALID_JSON_RESPONSE = ValidatorResponse.builder()
+        .isSuccessful(false)
+        .errorMessages(ImmutableList.of(ValidatorErrorMessage.builder()
+            .msg("Invalid JSON")
+            .severity("error")
+            .build()))
+        .build();
+
+    static final ValidatorResponse NO_RESOURCE_RESPONSE = ValidatorResponse.builder()
+        .isSuccessful(true)
+        .errorMessages(ImmutableList.of(ValidatorErrorMessage.builder()
+            .msg("Bundle entry without resource, nothing to validate")
+            .severity("information")
+            .build()))
+        .build();
+
     private final FhirValidator validator;
 
     private final FhirContext ctx;
@@ -66,6 +95,32 @@ public class Validator {
     private final String fhirVersion;
     private final String implementationGuidesFolder;
 
+    // null when the implementation guides are read from the classpath
+    private final File implementationGuidesDirectory;
+
+    // The implementation guide resources are trimmed when they are loaded
+    private final boolean reducedMemory;
+
+    // Hash of the .index.json files of the loaded implementation guides
+    private final String igFingerprint;
+
+    private final int igResourceCount;
+
+    private final ValidationResultCache resultCache;
+
+    private final CachingTerminologyValidationSupport terminologyCache;
+
+    private final StructuralPrecheck structuralPrecheck;
+
+    private final ValidationMetricsSink metricsSink;
+
+    // The resource types of the FHIR version, reported in the metrics
+    private final Set<String> resourceTypes;
+
+    // Created on first use so that the single resource path does not pay for idle threads
+    private ExecutorService batchExecutor;
+    private boolean closed;
+
     public Validator() {
         this(FHIR_R4, DEFAULT_IMPLEMENTATION_GUIDES_FOLDER);
     }
@@ -75,13 +130,25 @@ public class Validator {
     }
 
     public Validator(String fhirVersion, String implementationGuidesFolder) {
-        if (!Objects.equals(fhirVersion, FHIR_R4) && !Objects.equals(fhirVersion, FHIR_STU3)) {
-            throw new RuntimeException("Invalid FHIR version " + fhirVersion);
-        }
+        this(fhirVersion, implementationGuidesFolder, ValidatorConfig.DEFAULT);
+    }
+
+    public Validator(String fhirVersion, String implementationGuidesFolder, ValidatorConfig config) {
+        this(fhirVersion, implementationGuidesFolder, config, newFhirContext(fhirVersion), null);
+    }
+
+    /**
+     * Creates a validator that shares the FhirContext and the base FHIR definitions of other validators of the same FHIR version.
+     * Both are thread safe and are the largest part of a validator that does not depend on the implementation guides.
+     *
+     * @param baseDefinitions the shared base definitions created by {@link #newBaseDefinitions}, or null to create them
+     */
+    Validator(String fhirVersion, String implementationGuidesFolder, ValidatorConfig config, FhirContext ctx, IValidationSupport baseDefinitions) {
         this.fhirVersion = fhirVersion;
         this.implementationGuidesFolder = implementationGuidesFolder;
+        this.implementationGuidesDirectory = config.getImplementationGuidesDirectory() == null ? null : new File(config.getImplementationGuidesDirectory());
         // To learn more about the different ways to configure FhirInstanceValidator see: https://hapifhir.io/hapi-fhir/docs/validation/validation_support_modules.html
-        ctx = FHIR_R4.equals(fhirVersion) ? FhirContext.forR4() : FhirContext.forDstu3();
+        this.ctx = ctx;
 
         // Create a chain that will hold our modules
         ValidationSupportChain supportChain = new ValidationSupportChain();
@@ -89,8 +156,7 @@ public class Validator {
         // DefaultProfileValidationSupport supplies base FHIR definitions. This is generally required
         // even if you are using custom profiles, since those profiles will derive from the base
         // definitions.
-        DefaultProfileValidationSupport defaultSupport = new DefaultProfileValidationSupport(ctx);
-        supportChain.addValidationSupport(defaultSupport);
+        supportChain.addValidationSupport(baseDefinitions != null ? baseDefinitions : newBaseDefinitions(ctx, config));
 
         // This module supplies several code systems that are commonly used in validation
         supportChain.addValidationSupport(new CommonCodeSystemsTerminologyService(ctx));
@@ -98,156 +164,503 @@ public class Validator {
         // This module implements terminology services for in-memory code validation
         supportChain.addValidationSupport(new InMemoryTerminologyServerValidationSupport(ctx));
 
-        // Create a PrePopulatedValidationSupport which can be used to load custom definitions.
-        PrePopulatedValidationSupport prepopulatedValidationSupport = loadIgs(ctx);
-        supportChain.addValidationSupport(prepopulatedValidationSupport);
+        // Load the custom definitions of the implementation guides. A precompiled snapshot is already parsed and is used as is,
+        // otherwise the resources are parsed right away, or on first use if lazy loading is enabled.
+        // The files of an implementation guides directory can be replaced at any time, they are always parsed right away.
+        this.reducedMemory = config.isReducedMemory();
+        IgLoader igLoader = newIgLoader(config.getIgLoadingThreads());
+        Optional<IgSnapshot> igSnapshot = igLoader.loadSnapshot();
+        if (igSnapshot.isPresent() || !config.isLazyIgLoading() || implementationGuidesDirectory != null) {
+            IgSnapshot igs = igSnapshot.orElseGet(igLoader::load);
+            igFingerprint = igs.getFingerprint();
+            igResourceCount = igs.getResourceCount();
+            supportChain.addValidationSupport(igs.toValidationSupport(ctx));
+        } else {
+            LazyIgValidationSupport lazyIgValidationSupport = igLoader.loadLazily();
+            igFingerprint = lazyIgValidationSupport.getFingerprint();
+            igResourceCount = lazyIgValidationSupport.getResourceCount();
+            supportChain.addValidationSupport(lazyIgValidationSupport);
+        }
+
+        structuralPrecheck = new StructuralPrecheck(ctx.getResourceTypes(), supportChain);
+
+        // Memoize the terminology results of the chain, the same bindings are checked again and again across resources
+        IValidationSupport validationSupport = supportChain;
+        terminologyCache = config.getTerminologyCacheMaximumSize() > 0
+            ? new CachingTerminologyValidationSupport(ctx, supportChain, config.getTerminologyCacheMaximumSize())
+            : null;
+        if (terminologyCache != null) {
+            validationSupport = terminologyCache;
+        }
+
+        // Time the calls made to the chain when the metrics are collected
+        metricsSink = config.getMetricsSink();
+        resourceTypes = ImmutableSet.copyOf(ctx.getResourceTypes());
+        if (metricsSink != ValidationMetricsSink.NOOP) {
+            validationSupport = new TimedValidationSupport(ctx, validationSupport);
+        }
 
         // Create a validator using the FhirInstanceValidator module.
-        FhirInstanceValidator validatorModule = new FhirInstanceValidator(supportChain);
+        FhirInstanceValidator validatorModule = new FhirInstanceValidator(validationSupport);
         validator = ctx.newValidator().registerValidatorModule(validatorModule);
+
+        resultCache = config.getResultCacheMaximumSize() > 0
+            ? new ValidationResultCache(config.getResultCacheMaximumSize(), config.getResultCacheTtlSeconds(), fhirVersion, igFingerprint)
+            : null;
     }
 
     public ValidatorResponse validate(String resourceAsJsonText) {
+        return validate(resourceAsJsonText, ValidationOptions.DEFAULT);
+    }
+
+    /**
+     * Validates a resource with per request options, see {@link ValidationOptions}.
+     */
+    public ValidatorResponse validate(String resourceAsJsonText, ValidationOptions options) {
+        if (metricsSink == ValidationMetricsSink.NOOP) {
+            return validateCached(resourceAsJsonText, options);
+        }
+
+        long start = System.nanoTime();
+        ValidationPhaseTimings timings = new ValidationPhaseTimings();
+        ValidationPhaseTimings previous = ValidationPhaseTimings.start(timings);
+        ValidatorResponse response;
+        try {
+            response = validateCached(resourceAsJsonText, options);
+        } finally {
+            ValidationPhaseTimings.restore(previous);
+        }
+        long totalNanos = System.nanoTime() - start;
+
+        metricsSink.record(toValidationMetrics(resourceAsJsonText, response, timings, totalNanos));
+        return response;
+    }
+
+    private ValidatorResponse validateCached(String resourceAsJsonText, ValidationOptions options) {
+        if (resultCache != null) {
+            return resultCache.get(resourceAsJsonText, options, text -> validateUncached(text, options));
+        }
+        return validateUncached(resourceAsJsonText, options);
+    }
+
+    /**
+     * Hit, miss and eviction counters of the validation result cache. Empty if the cache is disabled.
+     */
+    public Optional<CacheStats> getResultCacheStats() {
+        return Optional.ofNullable(resultCache).map(ValidationResultCache::stats);
+    }
+
+    /**
+     * Hit and miss counters of the terminology cache. Empty if the cache is disabled.
+     */
+    public Optional<CacheStats> getTerminologyCacheStats() {
+        return Optional.ofNullable(terminologyCache).map(CachingTerminologyValidationSupport::stats);
+    }
+
+    public String getIgFingerprint() {
+        return igFingerprint;
+    }
+
+    public String getFhirVersion() {
+        return fhirVersion;
+    }
+
+    public String getImplementationGuidesFolder() {
+        return implementationGuidesFolder;
+    }
+
+    /**
+     * Number of distinct implementation guide resources available to this validator, parsed or not.
+     */
+    int getIgResourceCount() {
+        return igResourceCount;
+    }
+
+    /**
+     * The resource profiles of the implementation guides, by canonical URL, with the resource type they constrain.
+     */
+    SortedMap<String, String> getIgProfiles() {
+        return newIgLoader(1).profiles();
+    }
+
+    /**
+     * Fingerprint of the implementation guides as they are now, which differs from {@link #getIgFingerprint()} once they have changed.
+     */
+    String readIgFingerprint() {
+        return newIgLoader(1).fingerprint();
+    }
+
+    private IgLoader newIgLoader(int parseThreads) {
+        return new IgLoader(ctx, fhirVersion, implementationGuidesFolder, parseThreads, implementationGuidesDirectory, reducedMemory);
+    }
+
+    /**
+     * Stops the threads used by the batch and NDJSON validations. The validator can still validate single resources,
+     * batch and NDJSON validations throw an IllegalStateException once it is closed.
+     */
+    @Override
+    public synchronized void close() {
+        closed = true;
+        if (batchExecutor != null) {
+            batchExecutor.shutdown();
+            batchExecutor = null;
+        }
+    }
+
+    synchronized boolean isClosed() {
+        return closed;
+    }
+
+    /**
+     * The base FHIR definitions module of the configuration: DefaultProfileValidationSupport, or its trimmed copy in reduced memory mode.
+     */
+    static IValidationSupport newBaseDefinitions(FhirContext ctx, ValidatorConfig config) {
+        return config.isReducedMemory()
+            ? ReducedBaseValidationSupport.load(ctx, config.getBaseResourceTypes())
+            : new DefaultProfileValidationSupport(ctx);
+    }
+
+    static FhirContext newFhirContext(String fhirVersion) {
+        if (!Objects.equals(fhirVersion, FHIR_R4) && !Objects.equals(fhirVersion, FHIR_STU3)) {
+            throw new RuntimeException("Invalid FHIR version " + fhirVersion);
+        }
+        return FHIR_R4.equals(fhirVersion) ? FhirContext.forR4() : FhirContext.forDstu3();
+    }
+
+    private ValidatorResponse validateUncached(String resourceAsJsonText, ValidationOptions options) {
+        ValidationPhaseTimings timings = ValidationPhaseTimings.current();
+        long start = System.nanoTime();
+        if (options.isStructuralPrecheck()) {
+            Optional<ValidatorResponse> rejection = structuralPrecheck.check(resourceAsJsonText);
+            if (rejection.isPresent()) {
+                if (timings != null) {
+                    timings.validated(0, 0);
+                }
+                return capMessages(rejection.get(), options.getMaxMessages());
+            }
+        }
         try {
             ValidationResult result = validator.validateWithResult(resourceAsJsonText);
-            return toValidatorResponse(result);
+            long validated = System.nanoTime();
+            ValidatorResponse response = capMessages(toValidatorResponse(result, options), options.getMaxMessages());
+            if (timings != null) {
+                timings.validated(validated - start, System.nanoTime() - validated);
+            }
+            return response;
         } catch (JsonSyntaxException | NullPointerException | IllegalArgumentException | InvalidRequestException e) {
+            if (timings != null) {
+                timings.validated(System.nanoTime() - start, 0);
+            }
+            return INVALID_JSON_RESPONSE;
+        } catch (FHIRFormatError e) {
+            // A nested resource of a type without base definition, e.g. excluded by ValidatorConfig.baseResourceTypes
+            if (timings != null) {
+                timings.validated(System.nanoTime() - start, 0);
+            }
             return ValidatorResponse.builder()
                 .isSuccessful(false)
                 .errorMessages(ImmutableList.of(ValidatorErrorMessage.builder()
-                    .msg("Invalid JSON")
-                    .severity("error")
+                    .severity("fatal")
+                    .msg(e.getMessage())
                     .build()))
                 .build();
         }
     }
 
-    private ValidatorResponse toValidatorResponse(ValidationResult result) {
-        return ValidatorResponse.builder()
-            .isSuccessful(result.isSuccessful())
-            .errorMessages(result.getMessages().stream()
-                .map(singleValidationMessage -> ValidatorErrorMessage.builder()
-                    .severity(singleValidationMessage.getSeverity().getCode())
-                    .msg(singleValidationMessage.getLocationString() + " - " + singleValidationMessage.getMessage())
-                    .build())
-                .collect(Collectors.toList())
-            )
-            .build();
+    /**
+     * Validates several resources concurrently. The responses are returned in the same order as the input.
+     * Each entry is handled exactly as {@link #validate(String)} would handle it.
+     */
+    public List<ValidatorResponse> validateAll(List<String> resourcesAsJsonText) {
+        return validateAll(resourcesAsJsonText, ValidationOptions.DEFAULT);
     }
 
-    private PrePopulatedValidationSupport loadIgs(final FhirContext ctx) {
-
-        final Map<String, IBaseResource> myCodeSystems = new HashMap<>();
-        final Map<String, IBaseResource> myStructureDefinitions = new HashMap<>();
-        final Map<String, IBaseResource> myValueSets = new HashMap<>();
-
-        final ImmutableSet<String> allowedResourceTypes = ImmutableSet.of("StructureDefinition", "CodeSystem", "ValueSet");
-
-        IParser parser = ctx.newJsonParser();
-        parser.setParserErrorHandler(new StrictErrorHandler());
-
-        try (ScanResult allFiles = new ClassGraph().acceptPaths(implementationGuidesFolder).rejectPaths(implementationGuidesFolder + "/*/*").scan()) {
-            ResourceList jsonResources = allFiles.getResourcesWithExtension("json");
-
-            ResourceList indexFiles = jsonResources.filter(x -> x.getPath().endsWith(".index.json"));
-
-            for (Resource indexFile : indexFiles) {
-                IgIndex igIndex = GSON.fromJson(indexFile.getContentAsString(), IgIndex.class);
-                for (IgFile file : igIndex.files) {
-                    if (allowedResourceTypes.contains(file.resourceType)) {
-
-                        String igResourcePath = indexFile.getPath().replace(".index.json", file.filename);
-                        log.info("loading {}", igResourcePath);
-                        ResourceList resourcesWithPath = allFiles.getResourcesWithPath(igResourcePath);
-                        if (resourcesWithPath.isEmpty()) {
-                            throw new RuntimeException("The following file is declared in .index.json but does not exist: " + igResourcePath);
-                        }
-                        Resource resource = resourcesWithPath.get(0);
-                        try (InputStream inputStream = resource.open()) {
-                            switch (file.resourceType) {
-                                case "StructureDefinition":
-                                    Class<? extends IBaseResource> structureDefinitionClass = fhirVersion.equals(FHIR_R4)
-                                        ? StructureDefinition.class
-                                        : org.hl7.fhir.dstu3.model.StructureDefinition.class;
-                                    addStructureDefinition(parser.parseResource(structureDefinitionClass, inputStream), myStructureDefinitions);
-                                    break;
-                                case "CodeSystem":
-                                    Class<? extends IBaseResource> codeSystemClass = fhirVersion.equals(FHIR_R4)
-                                        ? CodeSystem.class
-                                        : org.hl7.fhir.dstu3.model.CodeSystem.class;
-                                    addCodeSystem(parser.parseResource(codeSystemClass, inputStream), myCodeSystems);
-                                    break;
-                                case "ValueSet":
-                                    Class<? extends IBaseResource> valueSetClass = fhirVersion.equals(FHIR_R4)
-                                        ? ValueSet.class
-                                        : org.hl7.fhir.dstu3.model.ValueSet.class;
-                                    addValueSet(parser.parseResource(valueSetClass, inputStream), myValueSets);
-                                    break;
-                                default:
-                                    // cannot happen since we checked for allowedResourceTypes
-                                    break;
-                            }
-                        } catch (Exception e) {
-                            log.error("Failed to load Implementation guides", e);
-                            throw new RuntimeException(e);
-                        }
-                    }
-                }
+    /**
+     * Validates several resources concurrently, each with the options as {@link #validate(String, ValidationOptions)} would.
+     */
+    public List<ValidatorResponse> validateAll(List<String> resourcesAsJsonText, ValidationOptions options) {
+        if (resourcesAsJsonText.size() <= 1) {
+            return resourcesAsJsonText.stream().map(resource -> validate(resource, options)).collect(Collectors.toList());
+        }
+
+        ExecutorService executor = getBatchExecutor();
+        List<Future<ValidatorResponse>> futures = new ArrayList<>(resourcesAsJsonText.size());
+        for (String resourceAsJsonText : resourcesAsJsonText) {
+            futures.add(executor.submit(() -> validate(resourceAsJsonText, options)));
+        }
+
+        List<ValidatorResponse> responses = new ArrayList<>(futures.size());
+        try {
+            for (Future<ValidatorResponse> future : futures) {
+                responses.add(future.get());
             }
-        } catch (Exception e) {
-            log.error("Failed to load Implementation guides", e);
+        } catch (InterruptedException e) {
+            futures.forEach(future -> future.cancel(true));
+            Thread.currentThread().interrupt();
             throw new RuntimeException(e);
+        } catch (ExecutionException e) {
+            futures.forEach(future -> future.cancel(true));
+            throw new RuntimeException(e.getCause());
         }
-
-        return new PrePopulatedValidationSupport(ctx, myStructureDefinitions, myValueSets, myCodeSystems);
+        return responses;
     }
 
-    // The following methods are mostly identical as the ones within PrePopulatedValidationSupport.
-    // There is an issue that prevents using PrePopulatedValidationSupport.addValueSet for dstu3 https://github.com/hapifhir/hapi-fhir/issues/2432
-    // The workaround is to use the constructor instead, but that requires us to build the resource maps exactly as PrePopulatedValidationSupport expects them.
-    // Once the issue is fixed this methods can be deleted and simply use addStructureDefinition, addCodeSystem, addValueSet from PrePopulatedValidationSupport.
-    private void addCodeSystem(IBaseResource theCodeSystem, Map<String, IBaseResource> theCodeSystems) {
-        String url = processResourceAndReturnUrl(theCodeSystem, "CodeSystem");
-        addToMap(theCodeSystem, theCodeSystems, url);
+    /**
+     * Validates a batch of resources. The input can be either a JSON array of resources or a Bundle, in which case
+     * the resource of each entry is validated. One response is returned per array element or Bundle entry.
+     * Any other JSON value is validated as a single resource. Each resource is validated from its original text, exactly as
+     * {@link #validate(String)} would validate it. A Bundle entry without resource, e.g. a DELETE, gets {@link #NO_RESOURCE_RESPONSE}.
+     */
+    public List<ValidatorResponse> validateBatch(String resourcesAsJsonText) {
+        return validateBatch(resourcesAsJsonText, ValidationOptions.DEFAULT);
     }
 
-    private void addStructureDefinition(IBaseResource theStructureDefinition, Map<String, IBaseResource> theStructureDefinitions) {
-        String url = processResourceAndReturnUrl(theStructureDefinition, "StructureDefinition");
-        addToMap(theStructureDefinition, theStructureDefinitions, url);
+    /**
+     * Validates a batch of resources with per request options, see {@link #validateBatch(String)}. The options apply to each resource,
+     * e.g. with maxErrors every resource is validated up to its own maxErrors-th error.
+     */
+    public List<ValidatorResponse> validateBatch(String resourcesAsJsonText, ValidationOptions options) {
+        return validateBatch(resourcesAsJsonText, options, resources -> validateAll(resources, options));
     }
 
-    private void addValueSet(IBaseResource theValueSet, Map<String, IBaseResource> theValueSets) {
-        String url = processResourceAndReturnUrl(theValueSet, "ValueSet");
-        addToMap(theValueSet, theValueSets, url);
+    /**
+     * Validates a batch of resources one after the other in the calling thread, see {@link #validateBatch(String, ValidationOptions)}.
+     * For hosts that bound the validation threads themselves, e.g. the {@link ValidationServer} workers. It works on a closed validator.
+     */
+    public List<ValidatorResponse> validateBatchSequentially(String resourcesAsJsonText, ValidationOptions options) {
+        return validateBatch(resourcesAsJsonText, options,
+            resources -> resources.stream().map(resource -> validate(resource, options)).collect(Collectors.toList()));
     }
 
-    private String processResourceAndReturnUrl(IBaseResource theCodeSystem, String theResourceName) {
-        Validate.notNull(theCodeSystem, "the" + theResourceName + " must not be null");
-        RuntimeResourceDefinition resourceDef = ctx.getResourceDefinition(theCodeSystem);
-        String actualResourceName = resourceDef.getName();
-        Validate.isTrue(actualResourceName.equals(theResourceName), "the" + theResourceName + " must be a " + theResourceName + " - Got: " + actualResourceName);
+    private List<ValidatorResponse> validateBatch(String resourcesAsJsonText, ValidationOptions options,
+                                                  Function<List<String>, List<ValidatorResponse>> validateResources) {
+        List<String> resources;
+        try {
+            resources = resourcesAsJsonText == null ? null : BatchSplitter.split(resourcesAsJsonText);
+        } catch (IOException e) {
+            resources = null;
+        }
+        if (resources == null) {
+            return ImmutableList.of(validate(null, options));
+        }
+
+        Iterator<ValidatorResponse> responses = validateResources.apply(resources.stream().filter(Objects::nonNull).collect(Collectors.toList())).iterator();
+        return resources.stream()
+            .map(resource -> resource == null ? NO_RESOURCE_RESPONSE : responses.next())
+            .collect(Collectors.toList());
+    }
 
-        Optional<IBase> urlValue = resourceDef.getChildByName("url").getAccessor().getFirstValueOrNull(theCodeSystem);
-        String url = urlValue.map(t -> (((IPrimitiveType<?>) t).getValueAsString())).orElse(null);
+    /**
+     * Validates an NDJSON stream, one resource per line, and writes one NDJSON response per line to the output.
+     * See {@link #validateNdjson(InputStream, NdjsonResultListener)}.
+     */
+    public NdjsonValidationSummary validateNdjson(InputStream input, OutputStream output, boolean failuresOnly) throws IOException {
+        return validateNdjson(input, output, failuresOnly, ValidationOptions.DEFAULT);
+    }
 
-        Validate.notNull(url, "the" + theResourceName + ".getUrl() must not return null");
-        Validate.notBlank(url, "the" + theResourceName + ".getUrl() must return a value");
-        return url;
+    /**
+     * Validates an NDJSON stream with per request options, see {@link #validateNdjson(InputStream, OutputStream, boolean)}.
+     * The options apply to each line.
+     */
+    public NdjsonValidationSummary validateNdjson(InputStream input, OutputStream output, boolean failuresOnly, ValidationOptions options)
+        throws IOException {
+        try (NdjsonResultWriter writer = new NdjsonResultWriter(output, failuresOnly)) {
+            return validateNdjson(input, writer, options);
+        }
     }
 
-    private <T extends IBaseResource> void addToMap(T theStructureDefinition, Map<String, T> map, String theUrl) {
-        if (isNotBlank(theUrl)) {
-            map.put(theUrl, theStructureDefinition);
+    /**
+     * Validates an NDJSON stream, one resource per line. The lines are validated concurrently and the responses are passed to the listener
+     * in line order as soon as they are available. Only a bounded number of lines are read ahead, so memory use does not grow with the input size.
+     * Blank lines are skipped. The input is not closed.
+     */
+    public NdjsonValidationSummary validateNdjson(InputStream input, NdjsonResultListener listener) throws IOException {
+        return validateNdjson(input, listener, ValidationOptions.DEFAULT);
+    }
 
-            int lastSlashIdx = theUrl.lastIndexOf('/');
-            if (lastSlashIdx != -1) {
-                map.put(theUrl.substring(lastSlashIdx + 1), theStructureDefinition);
-                int previousSlashIdx = theUrl.lastIndexOf('/', lastSlashIdx - 1);
-                if (previousSlashIdx != -1) {
-                    map.put(theUrl.substring(previousSlashIdx + 1), theStructureDefinition);
+    /**
+     * Validates an NDJSON stream with per request options, see {@link #validateNdjson(InputStream, NdjsonResultListener)}.
+     * The options apply to each line.
+     */
+    public NdjsonValidationSummary validateNdjson(InputStream input, NdjsonResultListener listener, ValidationOptions options) throws IOException {
+        ExecutorService executor = getBatchExecutor();
+        int maxLinesInFlight = Runtime.getRuntime().availableProcessors() * NDJSON_LINES_IN_FLIGHT_PER_THREAD;
+        Deque<PendingLine> pendingLines = new ArrayDeque<>(maxLinesInFlight);
+        BufferedReader reader = new BufferedReader(new InputStreamReader(input, StandardCharsets.UTF_8));
+
+        long lineNumber = 0;
+        long validatedLines = 0;
+        long failedLines = 0;
+        try {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                lineNumber++;
+                if (line.trim().isEmpty()) {
+                    continue;
+                }
+                if (pendingLines.size() == maxLinesInFlight) {
+                    validatedLines++;
+                    failedLines += publish(pendingLines.poll(), listener) ? 0 : 1;
                 }
+                String resourceAsJsonText = line;
+                pendingLines.add(new PendingLine(lineNumber, executor.submit(() -> validate(resourceAsJsonText, options))));
             }
+            while (!pendingLines.isEmpty()) {
+                validatedLines++;
+                failedLines += publish(pendingLines.poll(), listener) ? 0 : 1;
+            }
+        } catch (InterruptedException e) {
+            pendingLines.forEach(pendingLine -> pendingLine.getResponse().cancel(true));
+            Thread.currentThread().interrupt();
+            throw new RuntimeException(e);
+        } catch (ExecutionException e) {
+            pendingLines.forEach(pendingLine -> pendingLine.getResponse().cancel(true));
+            throw new RuntimeException(e.getCause());
+        } catch (IOException | RuntimeException e) {
+            pendingLines.forEach(pendingLine -> pendingLine.getResponse().cancel(true));
+            throw e;
+        }
+        return NdjsonValidationSummary.builder()
+            .validatedLines(validatedLines)
+            .failedLines(failedLines)
+            .build();
+    }
+
+    /**
+     * Waits for the response of a line and passes it to the listener. Returns whether the line is valid.
+     */
+    private static boolean publish(PendingLine pendingLine, NdjsonResultListener listener)
+        throws InterruptedException, ExecutionException, IOException {
+        ValidatorResponse response = pendingLine.getResponse().get();
+        listener.onResult(pendingLine.getLineNumber(), response);
+        return response.isSuccessful();
+    }
+
+    private synchronized ExecutorService getBatchExecutor() {
+        if (closed) {
+            // a new pool would never be shut down
+            throw new IllegalStateException("The validator is closed");
+        }
+        if (batchExecutor == null) {
+            batchExecutor = Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors(), new ThreadFactoryBuilder()
+                .setNameFormat("validator-batch-%d")
+                .setDaemon(true)
+                .build());
+        }
+        return batchExecutor;
+    }
+
+    /**
+     * Converts the HAPI result. With maxErrors > 0, the messages after the maxErrors-th error or fatal message are dropped.
+     */
+    private ValidatorResponse toValidatorResponse(ValidationResult result, ValidationOptions options) {
+        List<SingleValidationMessage> messages = new ArrayList<>();
+        int errorCount = 0;
+        for (SingleValidationMessage singleValidationMessage : result.getMessages()) {
+            messages.add(singleValidationMessage);
+            ResultSeverityEnum severity = singleValidationMessage.getSeverity();
+            if ((severity == ResultSeverityEnum.ERROR || severity == ResultSeverityEnum.FATAL) && ++errorCount == options.getMaxErrors()) {
+                break;
+            }
+        }
+        return ValidatorResponse.builder()
+            .isSuccessful(result.isSuccessful())
+            .errorMessages(options.isGroupMessages() ? groupMessages(messages) : toErrorMessages(messages))
+            .build();
+    }
+
+    private static List<ValidatorErrorMessage> toErrorMessages(List<SingleValidationMessage> messages) {
+        ImmutableList.Builder<ValidatorErrorMessage> errorMessages = ImmutableList.builderWithExpectedSize(messages.size());
+        for (SingleValidationMessage message : messages) {
+            errorMessages.add(ValidatorErrorMessage.of(message.getSeverity().getCode(),
+                Collections.singletonList(message.getLocationString()), message.getMessage()));
+        }
+        return errorMessages.build();
+    }
+
+    /**
+     * One message per severity and text, in the order of their first occurrence, with the locations joined.
+     */
+    private static List<ValidatorErrorMessage> groupMessages(List<SingleValidationMessage> messages) {
+        ListMultimap<Map.Entry<String, String>, String> locations = MultimapBuilder.linkedHashKeys().arrayListValues().build();
+        for (SingleValidationMessage message : messages) {
+            locations.put(Maps.immutableEntry(message.getSeverity().getCode(), message.getMessage()), message.getLocationString());
+        }
+        ImmutableList.Builder<ValidatorErrorMessage> errorMessages = ImmutableList.builderWithExpectedSize(locations.keySet().size());
+        for (Map.Entry<Map.Entry<String, String>, List<String>> group : Multimaps.asMap(locations).entrySet()) {
+            errorMessages.add(ValidatorErrorMessage.of(group.getKey().getKey(),
+                Collections.unmodifiableList(new ArrayList<>(group.getValue())), group.getKey().getValue()));
+        }
+        return errorMessages.build();
+    }
+
+    /**
+     * Keeps the first maxMessages messages. The dropped ones are counted by severity in a last information message.
+     */
+    static ValidatorResponse capMessages(ValidatorResponse response, int maxMessages) {
+        List<ValidatorErrorMessage> messages = response.getErrorMessages();
+        if (maxMessages <= 0 || messages.size() <= maxMessages) {
+            return response;
+        }
+        Map<String, Integer> droppedBySeverity = new LinkedHashMap<>();
+        for (ValidatorErrorMessage message : messages.subList(maxMessages, messages.size())) {
+            droppedBySeverity.merge(message.getSeverity(), 1, Integer::sum);
+        }
+        String counts = droppedBySeverity.entrySet().stream()
+            .map(entry -> entry.getValue() + " " + entry.getKey())
+            .collect(Collectors.joining(", "));
+        return ValidatorResponse.builder()
+            .isSuccessful(response.isSuccessful())
+            .errorMessages(ImmutableList.<ValidatorErrorMessage>builder()
+                .addAll(messages.subList(0, maxMessages))
+                .add(ValidatorErrorMessage.builder()
+                    .severity("information")
+                    .msg((messages.size() - maxMessages) + " more messages truncated (" + counts + ")")
+                    .build())
+                .build())
+            .build();
+    }
 
+    private ValidationMetrics toValidationMetrics(String resourceAsJsonText, ValidatorResponse response, ValidationPhaseTimings timings, long totalNanos) {
+        int errorCount = 0;
+        int warningCount = 0;
+        int informationCount = 0;
+        for (ValidatorErrorMessage message : response.getErrorMessages()) {
+            switch (message.getSeverity()) {
+                case "fatal":
+                case "error":
+                    errorCount++;
+                    break;
+                case "warning":
+                    warningCount++;
+                    break;
+                default:
+                    informationCount++;
+            }
         }
+        return ValidationMetrics.builder()
+            .fhirVersion(fhirVersion)
+            .resourceType(ResourceTypeSniffer.sniff(resourceAsJsonText)
+                // the resourceType is a metric dimension, made-up values of the payload must not create new metric series
+                .filter(resourceTypes::contains)
+                .orElse(ValidationMetrics.UNKNOWN_RESOURCE_TYPE))
+            .payloadBytes(resourceAsJsonText == null ? 0 : Utf8.encodedLength(resourceAsJsonText))
+            .totalNanos(totalNanos)
+            .profileResolutionNanos(timings.getProfileResolutionNanos())
+            .terminologyNanos(timings.getTerminologyNanos())
+            .instanceValidationNanos(timings.getInstanceValidationNanos())
+            .responseBuildingNanos(timings.getResponseBuildingNanos())
+            .cacheHit(!timings.isValidated())
+            .successful(response.isSuccessful())
+            .errorCount(errorCount)
+            .warningCount(warningCount)
+            .informationCount(informationCount)
+            .build();
+    }
+
+    @Value
+    private static class PendingLine {
+        private long lineNumber;
+        private Future<ValidatorResponse> response;
     }
 }
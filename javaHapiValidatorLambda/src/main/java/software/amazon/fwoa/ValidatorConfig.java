@@ -0,0 +1,80 @@
+/*
+ * Copyright Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package software.amazon.fwoa;
+
+import java.util.Set;
+
+import lombok.Builder;
+import lombok.Value;
+
+/**
+ * Optional settings of a {@link Validator}. The defaults keep the behavior of a plain validator.
+ */
+@Builder
+@Value
+public class ValidatorConfig {
+    public static final ValidatorConfig DEFAULT = ValidatorConfig.builder().build();
+
+    /**
+     * Maximum number of responses kept in the validation result cache. 0 disables the cache.
+     */
+    @Builder.Default
+    private long resultCacheMaximumSize = 0;
+
+    /**
+     * Time after which a cached validation response is discarded.
+     */
+    @Builder.Default
+    private long resultCacheTtlSeconds = 300;
+
+    /**
+     * Maximum number of terminology results (code validations, ValueSet expansions, code lookups) shared across validations. 0 disables the cache.
+     */
+    @Builder.Default
+    private long terminologyCacheMaximumSize = 0;
+
+    /**
+     * Number of threads used to parse the implementation guides when the validator is created. 1 parses them sequentially.
+     */
+    @Builder.Default
+    private int igLoadingThreads = Runtime.getRuntime().availableProcessors();
+
+    /**
+     * Parse the implementation guide resources on first use instead of when the validator is created.
+     * A resource that fails to parse then fails the first validation that needs it instead of the creation of the validator,
+     * missing files are still reported when the validator is created.
+     * Not used when a precompiled implementation guides snapshot is available.
+     */
+    @Builder.Default
+    private boolean lazyIgLoading = false;
+
+    /**
+     * Directory that contains the implementation guides folder. By default the implementation guides are read from the classpath.
+     * Implementation guides read from a directory are parsed when the validator is created, since the files may change afterwards.
+     */
+    @Builder.Default
+    private String implementationGuidesDirectory = null;
+
+    /**
+     * Drop the narrative and the documentation of the base definitions and of the implementation guide resources when they are loaded,
+     * see {@link ConformanceResourceTrimmer}. The base definitions are then all loaded when the validator is created.
+     */
+    @Builder.Default
+    private boolean reducedMemory = false;
+
+    /**
+     * In reduced memory mode, the resource types whose base StructureDefinitions and profiles are loaded. Resources of other types,
+     * including Bundle entries and contained resources, cannot be validated. null loads them all.
+     */
+    @Builder.Default
+    private Set<String> baseResourceTypes = null;
+
+    /**
+     * Receives the metrics and phase timings of every validation. Nothing is measured with the default no-op sink.
+     */
+    @Builder.Default
+    private ValidationMetricsSink metricsSink = ValidationMetricsSink.NOOP;
+}
@@ -0,0 +1,169 @@
+/*
+ * Copyright Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package software.amazon.fwoa;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Function;
+
+import ca.uhn.fhir.context.FhirContext;
+import ca.uhn.fhir.context.support.IValidationSupport;
+
+/**
+ * A fixed number of validators of the same implementation guides, for hosts that validate many resources concurrently.
+ * A Validator is thread safe, but every validation of a validator goes through the same terminology and profile caches;
+ * with one validator per worker thread the threads do not contend on them.
+ * The validators share the FhirContext and the base FHIR definitions, which do not depend on the implementation guides.
+ */
+class ValidatorPool implements AutoCloseable {
+    private final String fhirVersion;
+    private final String implementationGuidesFolder;
+    private final ValidatorConfig config;
+    private final FhirContext ctx;
+    private final IValidationSupport baseDefinitions;
+    private final List<Validator> validators;
+    private final BlockingQueue<Validator> available;
+
+    // callers that acquired the pool, including those waiting for a validator
+    private int users;
+    private boolean retired;
+    private final AtomicBoolean closed = new AtomicBoolean();
+
+    ValidatorPool(String fhirVersion, String implementationGuidesFolder, ValidatorConfig config, int size) {
+        this(fhirVersion, implementationGuidesFolder, config, size, Validator.newFhirContext(fhirVersion), null);
+    }
+
+    private ValidatorPool(String fhirVersion, String implementationGuidesFolder, ValidatorConfig config, int size,
+                          FhirContext ctx, IValidationSupport baseDefinitions) {
+        if (size < 1) {
+            throw new IllegalArgumentException("The validator pool size must be at least 1");
+        }
+        this.fhirVersion = fhirVersion;
+        this.implementationGuidesFolder = implementationGuidesFolder;
+        this.config = config;
+        this.ctx = ctx;
+        this.baseDefinitions = baseDefinitions != null ? baseDefinitions : Validator.newBaseDefinitions(ctx, config);
+
+        validators = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            validators.add(new Validator(fhirVersion, implementationGuidesFolder, config, ctx, this.baseDefinitions));
+        }
+        available = new ArrayBlockingQueue<>(size, false, validators);
+    }
+
+    /**
+     * Builds a pool of the same size with the implementation guides as they are now. The base FHIR definitions,
+     * already parsed by this pool, are reused.
+     */
+    ValidatorPool rebuild() {
+        return new ValidatorPool(fhirVersion, implementationGuidesFolder, config, validators.size(), ctx, baseDefinitions);
+    }
+
+    /**
+     * Runs the function with a validator that no other caller is using, waiting for one to be released if they are all in use.
+     *
+     * @throws IllegalStateException if the pool is retired, see {@link ImplementationGuidesReloader#apply} to run on the current pool
+     */
+    <T> T apply(Function<Validator, T> function) {
+        if (!acquire()) {
+            throw new IllegalStateException("The validator pool is retired");
+        }
+        try {
+            return applyAcquired(function);
+        } finally {
+            release();
+        }
+    }
+
+    /**
+     * Registers a caller of {@link #applyAcquired}, which must then call {@link #release()}.
+     *
+     * @return false if the pool is retired and takes no new callers
+     */
+    synchronized boolean acquire() {
+        if (retired || closed.get()) {
+            return false;
+        }
+        users++;
+        return true;
+    }
+
+    /**
+     * Closes a retired pool once its last caller is done.
+     */
+    void release() {
+        boolean last;
+        synchronized (this) {
+            last = --users == 0 && retired;
+        }
+        if (last) {
+            close();
+        }
+    }
+
+    <T> T applyAcquired(Function<Validator, T> function) {
+        Validator validator;
+        try {
+            validator = available.take();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Interrupted while waiting for a validator", e);
+        }
+        try {
+            return function.apply(validator);
+        } finally {
+            available.add(validator);
+        }
+    }
+
+    /**
+     * Stops taking new callers and closes the pool once the validations in progress are done, right away if there are none.
+     */
+    void retire() {
+        boolean idle;
+        synchronized (this) {
+            retired = true;
+            idle = users == 0;
+        }
+        if (idle) {
+            close();
+        }
+    }
+
+    boolean isClosed() {
+        return closed.get();
+    }
+
+    String getIgFingerprint() {
+        return validators.get(0).getIgFingerprint();
+    }
+
+    String readIgFingerprint() {
+        return validators.get(0).readIgFingerprint();
+    }
+
+    List<Validator> getValidators() {
+        return validators;
+    }
+
+    int size() {
+        return validators.size();
+    }
+
+    int availableCount() {
+        return available.size();
+    }
+
+    @Override
+    public void close() {
+        if (closed.compareAndSet(false, true)) {
+            validators.forEach(Validator::close);
+        }
+    }
+}
@@ -0,0 +1,194 @@
+/*
+ * Copyright Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package software.amazon.fwoa;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.function.Function;
+
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheLoader;
+import com.google.common.cache.CacheStats;
+import com.google.common.cache.LoadingCache;
+import com.google.common.cache.RemovalNotification;
+import com.google.common.util.concurrent.UncheckedExecutionException;
+
+import ca.uhn.fhir.context.FhirContext;
+import ca.uhn.fhir.context.support.IValidationSupport;
+import lombok.Value;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Validators for several implementation guide sets, e.g. one per tenant. A validator is built on first use for each
+ * (FHIR version, implementation guides folder) and the least recently used validators are evicted when their estimated
+ * memory exceeds the budget. All the validators of a FHIR version share the same FhirContext and base FHIR definitions,
+ * which are never evicted.
+ * The {@link ValidationServer} uses a registry for the implementation guide sets that requests select with the implementationGuides query parameter.
+ */
+@Slf4j
+public class ValidatorRegistry implements AutoCloseable {
+    // Retained heap of a warm R4 validator on top of the shared base definitions, and per implementation guide resource, from the
+    // "Validator, warmed up" line of HeapFootprintReport: 55.9 MB without implementation guides and 95.3 MB with the 67 resources of the
+    // US Core test implementation guide, i.e. (95.3 - 55.9) / 67 = 0.59 MB per resource. The parsed resources alone are 0.25 MB each, the rest
+    // is what the validation of the profiles adds to the caches. The shared FhirContext and base definitions take 131 MB per FHIR version.
+    static final long VALIDATOR_ESTIMATED_BYTES = 56L * 1024 * 1024;
+    static final long IG_RESOURCE_ESTIMATED_BYTES = 600L * 1024;
+
+    private final ValidatorConfig validatorConfig;
+    private final LoadingCache<ValidatorKey, RegisteredValidator> validators;
+    private final ConcurrentMap<String, SharedDefinitions> sharedDefinitions = new ConcurrentHashMap<>();
+
+    /**
+     * @param memoryBudgetMegabytes estimated memory of the cached validators, not counting the shared base definitions
+     */
+    public ValidatorRegistry(ValidatorConfig validatorConfig, long memoryBudgetMegabytes) {
+        this.validatorConfig = validatorConfig;
+        this.validators = CacheBuilder.newBuilder()
+            // a single segment so that the budget and the LRU order apply to all the validators, not per segment
+            .concurrencyLevel(1)
+            // weights are in KB to fit in an int
+            .maximumWeight(memoryBudgetMegabytes * 1024)
+            .weigher((ValidatorKey key, RegisteredValidator registered) -> (int) (estimatedBytes(registered.getValidator()) / 1024))
+            .removalListener(this::onRemoval)
+            .recordStats()
+            .build(CacheLoader.from(this::newValidator));
+    }
+
+    /**
+     * Runs the function with the validator of the implementation guides folder, building it if needed. Concurrent callers wait for the same build.
+     * A validator evicted while the function runs is closed once the function returns.
+     */
+    public <T> T apply(String fhirVersion, String implementationGuidesFolder, Function<Validator, T> function) {
+        ValidatorKey key = new ValidatorKey(fhirVersion, implementationGuidesFolder);
+        while (true) {
+            RegisteredValidator registered;
+            try {
+                registered = validators.getUnchecked(key);
+            } catch (UncheckedExecutionException e) {
+                throw (RuntimeException) e.getCause();
+            }
+            // evicted between the lookup and the acquire, the next lookup builds a new validator
+            if (registered.acquire()) {
+                try {
+                    return function.apply(registered.getValidator());
+                } finally {
+                    registered.release();
+                }
+            }
+        }
+    }
+
+    /**
+     * Hits are validators reused, loads are validators built, evictions are validators dropped to stay within the memory budget.
+     */
+    public CacheStats stats() {
+        return validators.stats();
+    }
+
+    /**
+     * Number of validators currently cached.
+     */
+    public long size() {
+        return validators.size();
+    }
+
+    /**
+     * Estimated memory of the cached validators, not counting the shared base definitions.
+     */
+    public long estimatedBytes() {
+        return validators.asMap().values().stream().mapToLong(registered -> estimatedBytes(registered.getValidator())).sum();
+    }
+
+    @Override
+    public void close() {
+        validators.invalidateAll();
+        validators.cleanUp();
+    }
+
+    static long estimatedBytes(Validator validator) {
+        return VALIDATOR_ESTIMATED_BYTES + validator.getIgResourceCount() * IG_RESOURCE_ESTIMATED_BYTES;
+    }
+
+    private RegisteredValidator newValidator(ValidatorKey key) {
+        long start = System.currentTimeMillis();
+        SharedDefinitions shared = sharedDefinitions.computeIfAbsent(key.getFhirVersion(),
+            fhirVersion -> new SharedDefinitions(fhirVersion, validatorConfig));
+        Validator validator = new Validator(key.getFhirVersion(), key.getImplementationGuidesFolder(), validatorConfig,
+            shared.getCtx(), shared.getBaseDefinitions());
+        log.info("Created validator for {} {} in {} ms", key.getFhirVersion(), key.getImplementationGuidesFolder(), System.currentTimeMillis() - start);
+        return new RegisteredValidator(validator);
+    }
+
+    private void onRemoval(RemovalNotification<ValidatorKey, RegisteredValidator> notification) {
+        log.info("Removed validator for {} {} ({})", notification.getKey().getFhirVersion(),
+            notification.getKey().getImplementationGuidesFolder(), notification.getCause());
+        notification.getValue().retire();
+    }
+
+    /**
+     * A cached validator and the callers using it. An evicted validator takes no new callers and is closed once the last one is done,
+     * the same way as a retired {@link ValidatorPool}.
+     */
+    private static class RegisteredValidator {
+        private final Validator validator;
+        private int users;
+        private boolean retired;
+
+        RegisteredValidator(Validator validator) {
+            this.validator = validator;
+        }
+
+        Validator getValidator() {
+            return validator;
+        }
+
+        synchronized boolean acquire() {
+            if (retired) {
+                return false;
+            }
+            users++;
+            return true;
+        }
+
+        void release() {
+            boolean last;
+            synchronized (this) {
+                last = --users == 0 && retired;
+            }
+            if (last) {
+                validator.close();
+            }
+        }
+
+        void retire() {
+            boolean idle;
+            synchronized (this) {
+                retired = true;
+                idle = users == 0;
+            }
+            if (idle) {
+                validator.close();
+            }
+        }
+    }
+
+    @Value
+    private static class ValidatorKey {
+        private String fhirVersion;
+        private String implementationGuidesFolder;
+    }
+
+    @Value
+    private static class SharedDefinitions {
+        private FhirContext ctx;
+        private IValidationSupport baseDefinitions;
+
+        SharedDefinitions(String fhirVersion, ValidatorConfig validatorConfig) {
+            this.ctx = Validator.newFhirContext(fhirVersion);
+            this.baseDefinitions = Validator.newBaseDefinitions(ctx, validatorConfig);
+        }
+    }
+}
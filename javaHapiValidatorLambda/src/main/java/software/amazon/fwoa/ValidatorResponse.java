@@ -5,9 +5,12 @@
 
 package software.amazon.fwoa;
 
+import java.util.Collections;
 import java.util.List;
 
+import lombok.AccessLevel;
 import lombok.Builder;
+import lombok.Getter;
 import lombok.Value;
 
 @Builder
@@ -22,4 +25,37 @@ class ValidatorResponse {
 class ValidatorErrorMessage {
     private String severity;
     private String msg;
+
+    // The parts of a "location - text" msg, for the OperationOutcome format. They have no getter so that the Lambda runtime
+    // does not serialize them: the response keeps its severity and msg fields.
+    @Getter(AccessLevel.NONE)
+    private List<String> locations;
+    @Getter(AccessLevel.NONE)
+    private String text;
+
+    /**
+     * A message about the elements at the locations, its msg is "location - text" with the locations joined by ", ".
+     */
+    static ValidatorErrorMessage of(String severity, List<String> locations, String text) {
+        return ValidatorErrorMessage.builder()
+            .severity(severity)
+            .msg(String.join(", ", locations) + " - " + text)
+            .locations(locations)
+            .text(text)
+            .build();
+    }
+
+    /**
+     * The locations of the message, empty if it is not about an element. An unknown location is null.
+     */
+    List<String> locations() {
+        return locations == null ? Collections.emptyList() : locations;
+    }
+
+    /**
+     * The message without its locations.
+     */
+    String text() {
+        return text == null ? msg : text;
+    }
 }
@@ -0,0 +1,40 @@
+/*
+ * Copyright Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package software.amazon.fwoa;
+
+import java.io.IOException;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+
+/**
+ * Writes a {@link ValidatorResponse} with a streaming generator, using the same field names as the Lambda runtime serialization.
+ */
+class ValidatorResponseJson {
+
+    private ValidatorResponseJson() {
+    }
+
+    static void write(JsonGenerator generator, ValidatorResponse response) throws IOException {
+        generator.writeStartObject();
+        writeFields(generator, response);
+        generator.writeEndObject();
+    }
+
+    /**
+     * Writes the fields of the response into the current object, so that callers can add fields of their own.
+     */
+    static void writeFields(JsonGenerator generator, ValidatorResponse response) throws IOException {
+        generator.writeBooleanField("successful", response.isSuccessful());
+        generator.writeArrayFieldStart("errorMessages");
+        for (ValidatorErrorMessage errorMessage : response.getErrorMessages()) {
+            generator.writeStartObject();
+            generator.writeStringField("severity", errorMessage.getSeverity());
+            generator.writeStringField("msg", errorMessage.getMsg());
+            generator.writeEndObject();
+        }
+        generator.writeEndArray();
+    }
+}
@@ -0,0 +1,92 @@
+/*
+ * Copyright Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package software.amazon.fwoa;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonObject;
+
+import io.github.classgraph.ClassGraph;
+import io.github.classgraph.Resource;
+import io.github.classgraph.ScanResult;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * The resources validated at startup so that the classes, the profiles and the terminology used by the first requests are already loaded.
+ * Validating a single resource only loads the code paths of that resource type, so the corpus is made of:
+ * <ul>
+ *   <li>the resources of a folder on the classpath, *.json files hold one resource and *.ndjson files one resource per line</li>
+ *   <li>a minimal resource claiming each profile of the implementation guides, which loads the profile and its snapshot</li>
+ * </ul>
+ * The validation results are not used, the minimal resources are expected to be invalid.
+ */
+@Slf4j
+class WarmUpCorpus {
+    static final String DEFAULT_WARM_UP_FOLDER = "warmUp";
+
+    private WarmUpCorpus() {
+    }
+
+    /**
+     * The corpus used by the Handler: the Synthea Patient, then the resources of the classpath folder VALIDATION_WARM_UP_FOLDER,
+     * then the implementation guides profiles of the validator unless VALIDATION_WARM_UP_PROFILES is false.
+     */
+    static List<String> fromEnvironment(Validator validator) {
+        String warmUpFolder = System.getenv("VALIDATION_WARM_UP_FOLDER");
+        if (warmUpFolder == null || warmUpFolder.isEmpty()) {
+            warmUpFolder = DEFAULT_WARM_UP_FOLDER;
+        }
+        boolean warmUpProfiles = !"false".equalsIgnoreCase(System.getenv("VALIDATION_WARM_UP_PROFILES"));
+
+        List<String> corpus = new ArrayList<>();
+        corpus.add(Handler.SOME_SYNTHEA_PATIENT);
+        corpus.addAll(load(warmUpFolder, warmUpProfiles ? validator.getIgProfiles() : Collections.emptyMap()));
+        return corpus;
+    }
+
+    static List<String> load(String warmUpFolder, Map<String, String> igProfiles) {
+        List<String> corpus = new ArrayList<>(loadFolder(warmUpFolder));
+        igProfiles.forEach((url, resourceType) -> corpus.add(profiledResource(resourceType, url)));
+        return corpus;
+    }
+
+    static List<String> loadFolder(String warmUpFolder) {
+        List<String> resources = new ArrayList<>();
+        try (ScanResult scanResult = new ClassGraph().acceptPaths(warmUpFolder).scan()) {
+            for (Resource resource : scanResult.getResourcesWithExtension("json")) {
+                resources.add(resource.getContentAsString());
+            }
+            for (Resource resource : scanResult.getResourcesWithExtension("ndjson")) {
+                for (String line : resource.getContentAsString().split("\n")) {
+                    if (!line.trim().isEmpty()) {
+                        resources.add(line);
+                    }
+                }
+            }
+        } catch (IOException e) {
+            throw new RuntimeException("Failed to load the warm-up resources of " + warmUpFolder, e);
+        }
+        log.info("Loaded {} warm-up resources from {}", resources.size(), warmUpFolder);
+        return resources;
+    }
+
+    static String profiledResource(String resourceType, String profileUrl) {
+        // the type and URL come from the implementation guide files, they are escaped by Gson
+        JsonArray profile = new JsonArray();
+        profile.add(profileUrl);
+        JsonObject meta = new JsonObject();
+        meta.add("profile", profile);
+        JsonObject resource = new JsonObject();
+        resource.addProperty("resourceType", resourceType);
+        resource.add("meta", meta);
+        return resource.toString();
+    }
+}
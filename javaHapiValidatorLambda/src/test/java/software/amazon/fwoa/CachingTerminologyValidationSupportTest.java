@@ -0,0 +1,152 @@
+/*
+ * Copyright Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package software.amazon.fwoa;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.hl7.fhir.common.hapi.validation.support.BaseValidationSupport;
+import org.hl7.fhir.instance.model.api.IBaseResource;
+import org.hl7.fhir.r4.model.ValueSet;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import ca.uhn.fhir.context.FhirContext;
+import ca.uhn.fhir.context.support.ConceptValidationOptions;
+import ca.uhn.fhir.context.support.IValidationSupport.CodeValidationResult;
+import ca.uhn.fhir.context.support.IValidationSupport.ValueSetExpansionOutcome;
+import ca.uhn.fhir.context.support.ValidationSupportContext;
+import ca.uhn.fhir.context.support.ValueSetExpansionOptions;
+
+class CachingTerminologyValidationSupportTest {
+    private static final FhirContext ctx = FhirContext.forR4();
+
+    private final AtomicInteger calls = new AtomicInteger();
+    private CachingTerminologyValidationSupport cachingSupport;
+    private ValidationSupportContext validationSupportContext;
+
+    @BeforeEach
+    void setup() {
+        // Knows a single code, "female", and counts the calls that reach it
+        BaseValidationSupport terminology = new BaseValidationSupport(ctx) {
+            @Override
+            public CodeValidationResult validateCode(ValidationSupportContext theValidationSupportContext, ConceptValidationOptions theOptions,
+                                                     String theCodeSystem, String theCode, String theDisplay, String theValueSetUrl) {
+                calls.incrementAndGet();
+                return "female".equals(theCode) ? new CodeValidationResult().setCode(theCode) : null;
+            }
+
+            @Override
+            public ValueSetExpansionOutcome expandValueSet(ValidationSupportContext theValidationSupportContext,
+                                                           ValueSetExpansionOptions theExpansionOptions, IBaseResource theValueSetToExpand) {
+                calls.incrementAndGet();
+                ValueSet expansion = ((ValueSet) theValueSetToExpand).copy();
+                expansion.getExpansion().addContains().setSystem("http://hl7.org/fhir/administrative-gender").setCode("female");
+                return new ValueSetExpansionOutcome(expansion);
+            }
+
+            @Override
+            public CodeValidationResult validateCodeInValueSet(ValidationSupportContext theValidationSupportContext, ConceptValidationOptions theOptions,
+                                                               String theCodeSystem, String theCode, String theDisplay, IBaseResource theValueSet) {
+                return validateCode(theValidationSupportContext, theOptions, theCodeSystem, theCode, theDisplay, null);
+            }
+        };
+        cachingSupport = new CachingTerminologyValidationSupport(ctx, terminology, 100);
+        validationSupportContext = new ValidationSupportContext(cachingSupport);
+    }
+
+    @Test
+    void validate_code_results_are_memoized() {
+        String system = "http://hl7.org/fhir/administrative-gender";
+        String valueSet = "http://hl7.org/fhir/ValueSet/administrative-gender";
+
+        CodeValidationResult first = validateCode(system, "female", valueSet);
+        CodeValidationResult second = validateCode(system, "female", valueSet);
+        validateCode(system, "female", null);
+        assertNull(validateCode(system, "femme", valueSet));
+        assertNull(validateCode(system, "femme", valueSet));
+
+        assertSame(first, second);
+        assertEquals(3, calls.get());
+        assertEquals(2, cachingSupport.stats().hitCount());
+        assertEquals(3, cachingSupport.stats().missCount());
+        assertEquals(3, cachingSupport.size());
+    }
+
+    @Test
+    void expansions_are_copied() {
+        ValueSet genders = new ValueSet().setUrl("http://hl7.org/fhir/ValueSet/administrative-gender");
+
+        ValueSet first = (ValueSet) cachingSupport.expandValueSet(validationSupportContext, null, genders).getValueSet();
+        first.getExpansion().getContains().clear();
+        ValueSet second = (ValueSet) cachingSupport.expandValueSet(validationSupportContext, null, genders).getValueSet();
+
+        assertEquals(1, calls.get());
+        assertNotSame(first, second);
+        assertEquals("female", second.getExpansion().getContainsFirstRep().getCode());
+        assertEquals(genders.getUrl(), second.getUrl());
+    }
+
+    @Test
+    void value_sets_are_keyed_by_url() {
+        ConceptValidationOptions options = new ConceptValidationOptions();
+        ValueSet genders = new ValueSet().setUrl("http://hl7.org/fhir/ValueSet/administrative-gender");
+        ValueSet sameUrl = new ValueSet().setUrl("http://hl7.org/fhir/ValueSet/administrative-gender");
+        ValueSet otherVersion = new ValueSet().setUrl("http://hl7.org/fhir/ValueSet/administrative-gender").setVersion("2");
+        ValueSet contained = new ValueSet();
+
+        cachingSupport.validateCodeInValueSet(validationSupportContext, options, null, "female", null, genders);
+        cachingSupport.validateCodeInValueSet(validationSupportContext, options, null, "female", null, sameUrl);
+        cachingSupport.validateCodeInValueSet(validationSupportContext, options, null, "female", null, otherVersion);
+        cachingSupport.validateCodeInValueSet(validationSupportContext, options, null, "female", null, contained);
+        cachingSupport.validateCodeInValueSet(validationSupportContext, options, null, "female", null, contained);
+
+        assertEquals(4, calls.get());
+        assertEquals(1, cachingSupport.stats().hitCount());
+    }
+
+    @Test
+    void contained_value_sets_reusing_a_known_url_are_not_shared() {
+        ConceptValidationOptions options = new ConceptValidationOptions();
+        ValueSet genders = new ValueSet().setUrl("http://hl7.org/fhir/ValueSet/administrative-gender");
+        ValueSet contained = new ValueSet().setUrl(genders.getUrl());
+        contained.setId("#genders");
+        contained.getCompose().addInclude().setSystem("http://example.org/genders").addConcept().setCode("femme");
+
+        ValueSet containedExpansion = (ValueSet) cachingSupport.expandValueSet(validationSupportContext, null, contained).getValueSet();
+        ValueSet expansion = (ValueSet) cachingSupport.expandValueSet(validationSupportContext, null, genders).getValueSet();
+        cachingSupport.validateCodeInValueSet(validationSupportContext, options, null, "femme", null, contained);
+        cachingSupport.validateCodeInValueSet(validationSupportContext, options, null, "femme", null, genders);
+
+        assertEquals(4, calls.get());
+        assertEquals(0, cachingSupport.stats().hitCount());
+        assertTrue(containedExpansion.hasCompose());
+        assertFalse(expansion.hasCompose());
+    }
+
+    @Test
+    void validator_uses_the_cache() {
+        Validator validator = new Validator(Validator.FHIR_R4, "testImplementationGuides-r4",
+            ValidatorConfig.builder().terminologyCacheMaximumSize(10_000).build());
+        String resourceText = "{\"resourceType\":\"Patient\",\"gender\":\"female\",\"maritalStatus\":{\"coding\":[{\"system\":\"http://terminology.hl7.org/CodeSystem/v3-MaritalStatus\",\"code\":\"M\"}]}}";
+
+        validator.validate(resourceText);
+        long hitCount = validator.getTerminologyCacheStats().get().hitCount();
+        validator.validate(resourceText);
+
+        assertTrue(validator.getTerminologyCacheStats().get().hitCount() > hitCount);
+    }
+
+    private CodeValidationResult validateCode(String system, String code, String valueSetUrl) {
+        return cachingSupport.validateCode(validationSupportContext, new ConceptValidationOptions(), system, code, null, valueSetUrl);
+    }
+}
@@ -0,0 +1,84 @@
+/*
+ * Copyright Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package software.amazon.fwoa;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.Map;
+import java.util.stream.Stream;
+
+import org.hl7.fhir.instance.model.api.IBaseResource;
+import org.hl7.fhir.r4.model.Base;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import ca.uhn.fhir.context.FhirContext;
+
+class IgLoaderTest {
+    static FhirContext ctx;
+
+    @BeforeAll
+    static void setup() {
+        ctx = FhirContext.forR4();
+    }
+
+    @Test
+    void parallel_load_matches_sequential_load() {
+        IgSnapshot sequential = new IgLoader(ctx, Validator.FHIR_R4, "testImplementationGuides-r4", 1).load();
+        IgSnapshot parallel = new IgLoader(ctx, Validator.FHIR_R4, "testImplementationGuides-r4", 4).load();
+
+        assertEquals(sequential.getFingerprint(), parallel.getFingerprint());
+        assertSameResources(sequential.getStructureDefinitions(), parallel.getStructureDefinitions());
+        assertSameResources(sequential.getValueSets(), parallel.getValueSets());
+        assertSameResources(sequential.getCodeSystems(), parallel.getCodeSystems());
+    }
+
+    @Test
+    void missing_file_is_reported_in_declaration_order() {
+        for (int threads : new int[] {1, 4}) {
+            IgLoader igLoader = new IgLoader(ctx, Validator.FHIR_R4, "testImplementationGuides-missing", threads);
+
+            RuntimeException e = assertThrows(RuntimeException.class, igLoader::load);
+
+            assertTrue(e.getMessage().contains("The following file is declared in .index.json but does not exist: "
+                + "testImplementationGuides-missing/broken/ValueSet-missing-1.json"), e.getMessage());
+        }
+    }
+
+    @Test
+    void fingerprint_covers_the_resource_files(@TempDir Path directory) throws Exception {
+        Path source = Paths.get(getClass().getClassLoader().getResource("testImplementationGuides-r4/us-core").toURI());
+        Path implementationGuide = Files.createDirectories(directory.resolve("igs").resolve("us-core"));
+        try (Stream<Path> files = Files.list(source)) {
+            for (Path file : (Iterable<Path>) files::iterator) {
+                Files.copy(file, implementationGuide.resolve(file.getFileName().toString()));
+            }
+        }
+        IgLoader igLoader = new IgLoader(ctx, Validator.FHIR_R4, "igs", 1, directory.toFile());
+        String fingerprint = igLoader.fingerprint();
+        assertEquals(fingerprint, igLoader.load().getFingerprint());
+
+        // edited in place, the .index.json is unchanged
+        Files.write(implementationGuide.resolve("ValueSet-birthsex.json"), "\n".getBytes(StandardCharsets.UTF_8), StandardOpenOption.APPEND);
+
+        assertNotEquals(fingerprint, igLoader.fingerprint());
+        assertEquals(igLoader.fingerprint(), igLoader.load().getFingerprint());
+    }
+
+    private static void assertSameResources(Map<String, IBaseResource> expected, Map<String, IBaseResource> actual) {
+        assertEquals(expected.keySet(), actual.keySet());
+        expected.forEach((url, resource) -> assertTrue(((Base) resource).equalsDeep((Base) actual.get(url)), url));
+    }
+}
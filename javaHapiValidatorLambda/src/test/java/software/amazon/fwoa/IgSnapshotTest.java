@@ -0,0 +1,96 @@
+/*
+ * Copyright Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package software.amazon.fwoa;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.OutputStream;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.nio.file.Path;
+import java.util.Optional;
+import java.util.concurrent.Callable;
+
+import org.hl7.fhir.r4.model.StructureDefinition;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import ca.uhn.fhir.context.FhirContext;
+
+class IgSnapshotTest {
+    private static final String IG_FOLDER = "testImplementationGuides-r4";
+    private static final String US_CORE_PATIENT = "http://hl7.org/fhir/us/core/StructureDefinition/us-core-patient";
+
+    static FhirContext ctx;
+    static IgSnapshot parsedIgs;
+
+    @TempDir
+    Path outputDirectory;
+
+    @BeforeAll
+    static void setup() {
+        ctx = FhirContext.forR4();
+        parsedIgs = new IgLoader(ctx, Validator.FHIR_R4, IG_FOLDER).load();
+    }
+
+    @Test
+    void snapshot_is_used_when_fresh() throws Exception {
+        IgSnapshotBuilder.build(Validator.FHIR_R4, IG_FOLDER, outputDirectory.toFile());
+
+        Optional<IgSnapshot> snapshot = withOutputOnClasspath(() -> new IgLoader(ctx, Validator.FHIR_R4, IG_FOLDER).loadSnapshot());
+
+        assertTrue(snapshot.isPresent());
+        assertEquals(parsedIgs.getFingerprint(), snapshot.get().getFingerprint());
+        assertEquals(parsedIgs.getStructureDefinitions().keySet(), snapshot.get().getStructureDefinitions().keySet());
+        assertEquals(parsedIgs.getValueSets().keySet(), snapshot.get().getValueSets().keySet());
+        assertEquals(parsedIgs.getCodeSystems().keySet(), snapshot.get().getCodeSystems().keySet());
+        assertTrue(((StructureDefinition) snapshot.get().getStructureDefinitions().get(US_CORE_PATIENT))
+            .equalsDeep((StructureDefinition) parsedIgs.getStructureDefinitions().get(US_CORE_PATIENT)));
+        // aliases share the same instance
+        assertTrue(snapshot.get().getStructureDefinitions().get(US_CORE_PATIENT) == snapshot.get().getStructureDefinitions().get("us-core-patient"));
+    }
+
+    @Test
+    void stale_snapshot_is_ignored() throws Exception {
+        IgSnapshot stale = new IgSnapshot(Validator.FHIR_R4, "stale", parsedIgs.getStructureDefinitions(), parsedIgs.getValueSets(), parsedIgs.getCodeSystems());
+        writeSnapshot(stale);
+
+        assertFalse(withOutputOnClasspath(() -> new IgLoader(ctx, Validator.FHIR_R4, IG_FOLDER).loadSnapshot()).isPresent());
+    }
+
+    @Test
+    void missing_snapshot_falls_back_to_parsing() {
+        IgLoader igLoader = new IgLoader(ctx, Validator.FHIR_R4, IG_FOLDER);
+        IgSnapshot igs = igLoader.loadSnapshot().orElseGet(igLoader::load);
+
+        assertEquals(parsedIgs.getFingerprint(), igs.getFingerprint());
+        assertEquals(parsedIgs.getResourceCount(), igs.getResourceCount());
+    }
+
+    private void writeSnapshot(IgSnapshot snapshot) throws Exception {
+        File snapshotFile = outputDirectory.resolve(IgSnapshot.resourcePath(IG_FOLDER, Validator.FHIR_R4)).toFile();
+        snapshotFile.getParentFile().mkdirs();
+        try (OutputStream outputStream = new FileOutputStream(snapshotFile)) {
+            snapshot.write(outputStream);
+        }
+    }
+
+    private <T> T withOutputOnClasspath(Callable<T> callable) throws Exception {
+        Thread thread = Thread.currentThread();
+        ClassLoader original = thread.getContextClassLoader();
+        try (URLClassLoader classLoader = new URLClassLoader(new URL[] {outputDirectory.toUri().toURL()}, original)) {
+            thread.setContextClassLoader(classLoader);
+            return callable.call();
+        } finally {
+            thread.setContextClassLoader(original);
+        }
+    }
+}
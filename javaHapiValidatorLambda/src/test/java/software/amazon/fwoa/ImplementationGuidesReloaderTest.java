@@ -0,0 +1,165 @@
+/*
+ * Copyright Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package software.amazon.fwoa;
+
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.net.URISyntaxException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.stream.Stream;
+
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class ImplementationGuidesReloaderTest {
+    private static final String US_CORE_PATIENT = "{\"resourceType\":\"Patient\",\"meta\":{\"profile\":[\"http://hl7.org/fhir/us/core/StructureDefinition/us-core-patient\"]},\"gender\":\"female\"}";
+
+    @TempDir
+    Path directory;
+
+    ValidatorConfig config;
+
+    @BeforeEach
+    void setup() throws IOException {
+        Files.createDirectories(directory.resolve("igs"));
+        config = ValidatorConfig.builder().implementationGuidesDirectory(directory.toString()).build();
+    }
+
+    @Test
+    void validators_are_replaced_when_the_implementation_guides_change() throws Exception {
+        ValidatorPool initialPool = newPool();
+        try (ImplementationGuidesReloader reloader = new ImplementationGuidesReloader(initialPool, ValidatorPool::rebuild, 0)) {
+            assertFalse(reloader.reloadIfChanged());
+            assertTrue(hasMessage(reloader.apply(v -> v.validate(US_CORE_PATIENT)), "because it is unknown"));
+
+            copyImplementationGuide("testImplementationGuides-r4/us-core");
+
+            assertTrue(reloader.reloadIfChanged());
+            assertNotSame(initialPool, reloader.get());
+            assertTrue(initialPool.isClosed());
+            assertTrue(hasMessage(reloader.apply(v -> v.validate(US_CORE_PATIENT)), "Patient.identifier: minimum required = 1"));
+            assertFalse(reloader.reloadIfChanged());
+        }
+    }
+
+    @Test
+    void validators_are_replaced_when_a_resource_is_edited_in_place() throws Exception {
+        copyImplementationGuide("testImplementationGuides-r4/us-core");
+        ValidatorPool initialPool = newPool();
+        try (ImplementationGuidesReloader reloader = new ImplementationGuidesReloader(initialPool, ValidatorPool::rebuild, 0)) {
+            assertTrue(hasMessage(reloader.apply(v -> v.validate(US_CORE_PATIENT)), "Patient.identifier: minimum required = 1"));
+
+            // the .index.json is unchanged, only the profile makes the identifier optional
+            Path profile = directory.resolve("igs").resolve("us-core").resolve("StructureDefinition-us-core-patient.json");
+            JsonObject structureDefinition = JsonParser.parseString(new String(Files.readAllBytes(profile), StandardCharsets.UTF_8)).getAsJsonObject();
+            for (String elements : Arrays.asList("snapshot", "differential")) {
+                for (JsonElement element : structureDefinition.getAsJsonObject(elements).getAsJsonArray("element")) {
+                    if ("Patient.identifier".equals(element.getAsJsonObject().get("id").getAsString())) {
+                        element.getAsJsonObject().addProperty("min", 0);
+                    }
+                }
+            }
+            Files.write(profile, structureDefinition.toString().getBytes(StandardCharsets.UTF_8));
+
+            assertTrue(reloader.reloadIfChanged());
+            assertTrue(initialPool.isClosed());
+            assertFalse(hasMessage(reloader.apply(v -> v.validate(US_CORE_PATIENT)), "Patient.identifier: minimum required = 1"));
+        }
+    }
+
+    @Test
+    void retired_pools_take_no_new_callers() throws Exception {
+        ValidatorPool initialPool = newPool();
+        ImplementationGuidesReloader reloader = new ImplementationGuidesReloader(initialPool, ValidatorPool::rebuild, 0);
+        copyImplementationGuide("testImplementationGuides-r4/us-core");
+        assertTrue(reloader.reloadIfChanged());
+
+        assertThrows(IllegalStateException.class, () -> initialPool.apply(v -> v));
+        // a closed validator does not start a new batch thread pool
+        Validator oldValidator = initialPool.getValidators().get(0);
+        assertThrows(IllegalStateException.class, () -> oldValidator.validateAll(Arrays.asList(US_CORE_PATIENT, US_CORE_PATIENT)));
+        Validator validator = reloader.apply(v -> v);
+        assertFalse(validator.isClosed());
+
+        reloader.close();
+        assertTrue(validator.isClosed());
+        assertThrows(IllegalStateException.class, () -> reloader.apply(v -> v));
+    }
+
+    @Test
+    void validations_in_progress_finish_on_the_old_validators() throws Exception {
+        ValidatorPool initialPool = newPool();
+        try (ImplementationGuidesReloader reloader = new ImplementationGuidesReloader(initialPool, ValidatorPool::rebuild, 0)) {
+            CountDownLatch started = new CountDownLatch(1);
+            CountDownLatch release = new CountDownLatch(1);
+            CompletableFuture<ValidatorResponse> inProgress = CompletableFuture.supplyAsync(() -> initialPool.apply(v -> {
+                started.countDown();
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                return v.validate(US_CORE_PATIENT);
+            }));
+            started.await();
+
+            copyImplementationGuide("testImplementationGuides-r4/us-core");
+            assertTrue(reloader.reloadIfChanged());
+
+            assertFalse(initialPool.isClosed());
+            release.countDown();
+            assertTrue(hasMessage(inProgress.get(), "because it is unknown"));
+            assertTrue(initialPool.isClosed());
+        }
+    }
+
+    @Test
+    void broken_implementation_guides_are_not_swapped_in() throws Exception {
+        ValidatorPool initialPool = newPool();
+        try (ImplementationGuidesReloader reloader = new ImplementationGuidesReloader(initialPool, ValidatorPool::rebuild, 0)) {
+            copyImplementationGuide("testImplementationGuides-missing/broken");
+
+            assertFalse(reloader.reloadIfChanged());
+            assertSame(initialPool, reloader.get());
+            assertFalse(initialPool.isClosed());
+        }
+    }
+
+    private ValidatorPool newPool() {
+        return new ValidatorPool(Validator.FHIR_R4, "igs", config, 1);
+    }
+
+    private static boolean hasMessage(ValidatorResponse response, String message) {
+        return response.getErrorMessages().stream().anyMatch(m -> m.getMsg().contains(message));
+    }
+
+    private void copyImplementationGuide(String resourcePath) throws IOException, URISyntaxException {
+        Path source = Paths.get(getClass().getClassLoader().getResource(resourcePath).toURI());
+        Path target = directory.resolve("igs").resolve(source.getFileName().toString());
+        Files.createDirectories(target);
+        try (Stream<Path> files = Files.list(source)) {
+            for (Path file : (Iterable<Path>) files::iterator) {
+                Files.copy(file, target.resolve(file.getFileName().toString()));
+            }
+        }
+    }
+}
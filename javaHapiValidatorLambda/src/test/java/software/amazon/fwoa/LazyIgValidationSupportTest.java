@@ -0,0 +1,71 @@
+/*
+ * Copyright Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package software.amazon.fwoa;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import org.hl7.fhir.common.hapi.validation.support.PrePopulatedValidationSupport;
+import org.hl7.fhir.dstu3.model.Base;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+import ca.uhn.fhir.context.FhirContext;
+import ca.uhn.fhir.context.support.ValidationSupportContext;
+
+class LazyIgValidationSupportTest {
+    static FhirContext ctx;
+    static IgSnapshot eagerIgs;
+
+    @BeforeAll
+    static void setup() {
+        ctx = FhirContext.forDstu3();
+        eagerIgs = new IgLoader(ctx, Validator.FHIR_STU3, "testImplementationGuides-stu3").load();
+    }
+
+    @Test
+    void nothing_is_parsed_up_front() {
+        LazyIgValidationSupport lazy = new IgLoader(ctx, Validator.FHIR_STU3, "testImplementationGuides-stu3").loadLazily();
+
+        assertEquals(0, lazy.getParsedResourceCount());
+        assertEquals(eagerIgs.getFingerprint(), lazy.getFingerprint());
+    }
+
+    @Test
+    void resources_are_parsed_once_on_first_use() {
+        LazyIgValidationSupport lazy = new IgLoader(ctx, Validator.FHIR_STU3, "testImplementationGuides-stu3").loadLazily();
+
+        Object patientProfile = lazy.fetchStructureDefinition("http://hl7.org/fhir/us/core/StructureDefinition/us-core-patient");
+
+        assertEquals(1, lazy.getParsedResourceCount());
+        assertSame(patientProfile, lazy.fetchStructureDefinition("us-core-patient"));
+        assertSame(patientProfile, lazy.fetchStructureDefinition("StructureDefinition/us-core-patient"));
+        assertEquals(1, lazy.getParsedResourceCount());
+        assertNull(lazy.fetchStructureDefinition("http://example.org/StructureDefinition/unknown"));
+    }
+
+    @Test
+    void same_resources_as_eager_loading() {
+        LazyIgValidationSupport lazy = new IgLoader(ctx, Validator.FHIR_STU3, "testImplementationGuides-stu3").loadLazily();
+        PrePopulatedValidationSupport eager = eagerIgs.toValidationSupport(ctx);
+        ValidationSupportContext validationSupportContext = new ValidationSupportContext(lazy);
+
+        eagerIgs.getStructureDefinitions().keySet().forEach(url ->
+            assertTrue(((Base) eager.fetchStructureDefinition(url)).equalsDeep((Base) lazy.fetchStructureDefinition(url)), url));
+        eagerIgs.getValueSets().keySet().forEach(url -> {
+            assertTrue(lazy.isValueSetSupported(validationSupportContext, url), url);
+            assertTrue(((Base) eager.fetchValueSet(url)).equalsDeep((Base) lazy.fetchValueSet(url)), url);
+        });
+        eagerIgs.getCodeSystems().keySet().forEach(url -> {
+            assertTrue(lazy.isCodeSystemSupported(validationSupportContext, url), url);
+            assertTrue(((Base) eager.fetchCodeSystem(url)).equalsDeep((Base) lazy.fetchCodeSystem(url)), url);
+        });
+        assertEquals(eager.fetchAllConformanceResources().size(), lazy.fetchAllConformanceResources().size());
+        assertEquals(eagerIgs.getResourceCount(), lazy.getParsedResourceCount());
+    }
+}
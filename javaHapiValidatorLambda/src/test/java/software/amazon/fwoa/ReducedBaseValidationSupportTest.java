@@ -0,0 +1,75 @@
+/*
+ * Copyright Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package software.amazon.fwoa;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.Arrays;
+import java.util.List;
+
+import com.google.common.collect.ImmutableSet;
+
+import org.hl7.fhir.r4.model.ElementDefinition;
+import org.hl7.fhir.r4.model.StructureDefinition;
+import org.junit.jupiter.api.Test;
+
+import ca.uhn.fhir.context.FhirContext;
+
+class ReducedBaseValidationSupportTest {
+    private static final String US_CORE_PATIENT = "{\"resourceType\":\"Patient\",\"meta\":{\"profile\":[\"http://hl7.org/fhir/us/core/StructureDefinition/us-core-patient\"]},\"gender\":\"female\"}";
+
+    @Test
+    void reduced_memory_reports_the_same_messages() {
+        List<String> resources = Arrays.asList(
+            US_CORE_PATIENT,
+            "{\"resourceType\":\"Patient\",\"gender\":\"femme\",\"birthDate\":\"yesterday\",\"name\":\"x\"}",
+            "{\"resourceType\":\"Observation\",\"status\":\"final\",\"code\":{\"coding\":[{\"system\":\"http://loinc.org\",\"code\":\"8867-4\"}]}}",
+            "{\"resourceType\":\"Foo\"}");
+        Validator validator = new Validator(Validator.FHIR_R4, "testImplementationGuides-r4");
+        Validator reduced = new Validator(Validator.FHIR_R4, "testImplementationGuides-r4", ValidatorConfig.builder().reducedMemory(true).build());
+
+        for (String resource : resources) {
+            assertEquals(validator.validate(resource), reduced.validate(resource), resource);
+        }
+    }
+
+    @Test
+    void base_resource_types() {
+        Validator validator = new Validator(Validator.FHIR_R4, "testImplementationGuides-r4", ValidatorConfig.builder()
+            .reducedMemory(true)
+            .baseResourceTypes(ImmutableSet.of("Patient"))
+            .build());
+
+        assertTrue(validator.validate(US_CORE_PATIENT).getErrorMessages().stream()
+            .anyMatch(m -> m.getMsg().contains("Patient.identifier: minimum required = 1")));
+        ValidatorResponse contained = validator.validate("{\"resourceType\":\"Patient\",\"contained\":[{\"resourceType\":\"Condition\",\"id\":\"c\"}]}");
+        assertFalse(contained.isSuccessful());
+        assertEquals("fatal", contained.getErrorMessages().get(0).getSeverity());
+    }
+
+    @Test
+    void documentation_is_dropped() {
+        FhirContext ctx = FhirContext.forR4();
+        ReducedBaseValidationSupport baseDefinitions = ReducedBaseValidationSupport.load(ctx, ImmutableSet.of("Patient"));
+
+        StructureDefinition patient = (StructureDefinition) baseDefinitions.fetchStructureDefinition("Patient");
+        assertNotNull(patient);
+        assertNotNull(baseDefinitions.fetchStructureDefinition("http://hl7.org/fhir/StructureDefinition/HumanName"));
+        assertNull(baseDefinitions.fetchStructureDefinition("Observation"));
+        assertNotNull(baseDefinitions.fetchValueSet("http://hl7.org/fhir/ValueSet/administrative-gender|4.0.1"));
+        assertTrue(patient.getText().isEmpty());
+        assertTrue(patient.getMapping().isEmpty());
+        for (ElementDefinition element : patient.getSnapshot().getElement()) {
+            assertFalse(element.hasComment(), element.getPath());
+            assertTrue(element.getMapping().isEmpty(), element.getPath());
+            assertTrue(element.hasDefinition(), element.getPath());
+        }
+    }
+}
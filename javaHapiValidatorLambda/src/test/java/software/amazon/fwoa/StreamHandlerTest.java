@@ -0,0 +1,127 @@
+/*
+ * Copyright Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package software.amazon.fwoa;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.StringWriter;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Collections;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+class StreamHandlerTest {
+    private static final ObjectMapper OBJECT_MAPPER = new ObjectMapper();
+
+    static Validator validator;
+    static StreamHandler streamHandler;
+
+    @BeforeAll
+    static void setup() {
+        validator = new Validator(Validator.FHIR_R4, "testImplementationGuides-r4");
+        streamHandler = new StreamHandler(validator);
+    }
+
+    @Test
+    void json_string_event() throws IOException {
+        String resourceText = "{\"resourceType\":\"Patient\",\"gender\":\"femme\",\"name\":[{\"family\":\"Ünïcödé\"}]}";
+
+        String output = handle(OBJECT_MAPPER.writeValueAsString(resourceText));
+
+        // Same JSON the runtime produces when it serializes the response of the String based handler
+        assertEquals(OBJECT_MAPPER.valueToTree(validator.validate(resourceText)), OBJECT_MAPPER.readTree(output));
+    }
+
+    @Test
+    void raw_resource_event() throws IOException {
+        String resourceText = "{\"resourceType\":\"Patient\",\"gender\":\"female\"}";
+
+        assertEquals("{\"successful\":true,\"errorMessages\":[]}", handle(resourceText));
+    }
+
+    @Test
+    void invalid_events() throws IOException {
+        String invalidJson = "{\"successful\":false,\"errorMessages\":[{\"severity\":\"error\",\"msg\":\"Invalid JSON\"}]}";
+
+        assertEquals(invalidJson, handle("\"{a:<>}}}\""));
+        assertEquals(invalidJson, handle("{a:<>}}}"));
+        assertEquals(invalidJson, handle("\"unterminated"));
+        assertEquals(invalidJson, handle(""));
+    }
+
+    @Test
+    void operation_outcome_format() throws IOException {
+        StreamHandler operationOutcomeHandler = new StreamHandler(validator, ValidationOptions.DEFAULT, ResponseFormat.OPERATION_OUTCOME);
+
+        JsonNode valid = OBJECT_MAPPER.readTree(handle(operationOutcomeHandler, "{\"resourceType\":\"Patient\",\"gender\":\"female\"}"));
+        JsonNode invalid = OBJECT_MAPPER.readTree(handle(operationOutcomeHandler, "{\"resourceType\":\"Patient\",\"gender\":\"femme\"}"));
+        JsonNode invalidJson = OBJECT_MAPPER.readTree(handle(operationOutcomeHandler, "{a:<>}}}"));
+
+        assertEquals("OperationOutcome", valid.get("resourceType").asText());
+        assertEquals("information", valid.get("issue").get(0).get("severity").asText());
+        assertEquals("error", invalid.get("issue").get(0).get("severity").asText());
+        assertEquals("processing", invalid.get("issue").get(0).get("code").asText());
+        assertEquals("Patient.gender", invalid.get("issue").get(0).get("location").get(0).asText());
+        assertTrue(invalid.get("issue").get(0).get("diagnostics").asText().contains("'femme'"));
+        assertEquals(OBJECT_MAPPER.readTree("{\"resourceType\":\"OperationOutcome\",\"issue\":[{\"severity\":\"error\",\"code\":\"processing\",\"diagnostics\":\"Invalid JSON\"}]}"),
+            invalidJson);
+    }
+
+    @Test
+    void operation_outcome_of_texts_with_separators() throws IOException {
+        ValidatorResponse response = ValidatorResponse.builder()
+            .isSuccessful(false)
+            .errorMessages(Arrays.asList(
+                ValidatorErrorMessage.builder().severity("fatal").msg("Error parsing JSON - unexpected token").build(),
+                ValidatorErrorMessage.of("error", Collections.singletonList(null), "Value - not allowed"),
+                ValidatorErrorMessage.of("warning", Arrays.asList("Patient.name[0]", "Patient.name[1], given"), "Name - too long")))
+            .build();
+        StringWriter json = new StringWriter();
+        try (JsonGenerator generator = new JsonFactory().createGenerator(json)) {
+            ResponseFormat.OPERATION_OUTCOME.write(generator, response);
+        }
+
+        assertEquals(OBJECT_MAPPER.readTree("{\"resourceType\":\"OperationOutcome\",\"issue\":["
+            + "{\"severity\":\"fatal\",\"code\":\"processing\",\"diagnostics\":\"Error parsing JSON - unexpected token\"},"
+            + "{\"severity\":\"error\",\"code\":\"processing\",\"diagnostics\":\"Value - not allowed\"},"
+            + "{\"severity\":\"warning\",\"code\":\"processing\",\"diagnostics\":\"Name - too long\",\"location\":[\"Patient.name[0]\",\"Patient.name[1], given\"]}]}"),
+            OBJECT_MAPPER.readTree(json.toString()));
+    }
+
+    @Test
+    void read_event() throws IOException {
+        assertEquals("{\"resourceType\":\"Patient\"}", StreamHandler.readEvent(toInputStream(" \"{\\\"resourceType\\\":\\\"Patient\\\"}\"\n")));
+        assertEquals("{\"resourceType\":\"Patient\"}", StreamHandler.readEvent(toInputStream("{\"resourceType\":\"Patient\"}")));
+        assertNull(StreamHandler.readEvent(toInputStream("\"a\" \"b\"")));
+    }
+
+    private static String handle(String event) throws IOException {
+        return handle(streamHandler, event);
+    }
+
+    private static String handle(StreamHandler handler, String event) throws IOException {
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        handler.handleRequest(toInputStream(event), output, null);
+        return new String(output.toByteArray(), StandardCharsets.UTF_8);
+    }
+
+    private static InputStream toInputStream(String text) {
+        return new ByteArrayInputStream(text.getBytes(StandardCharsets.UTF_8));
+    }
+}
@@ -0,0 +1,133 @@
+/*
+ * Copyright Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package software.amazon.fwoa;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+class ValidationMetricsTest {
+    static final List<ValidationMetrics> recorded = new CopyOnWriteArrayList<>();
+    static Validator validator;
+
+    @BeforeAll
+    static void setup() {
+        validator = new Validator(Validator.FHIR_R4, "testImplementationGuides-r4", ValidatorConfig.builder()
+            .resultCacheMaximumSize(10)
+            .metricsSink(recorded::add)
+            .build());
+    }
+
+    @BeforeEach
+    void clear() {
+        recorded.clear();
+    }
+
+    @Test
+    void metrics_of_a_validation() {
+        String resourceText = "{\"resourceType\":\"Patient\",\"meta\":{\"profile\":[\"http://hl7.org/fhir/us/core/StructureDefinition/us-core-patient\"]},\"gender\":\"femme\"}";
+
+        ValidatorResponse response = validator.validate(resourceText);
+
+        assertEquals(1, recorded.size());
+        ValidationMetrics metrics = recorded.get(0);
+        assertEquals(Validator.FHIR_R4, metrics.getFhirVersion());
+        assertEquals("Patient", metrics.getResourceType());
+        assertEquals(resourceText.length(), metrics.getPayloadBytes());
+        assertFalse(metrics.isCacheHit());
+        assertFalse(metrics.isSuccessful());
+        assertEquals(response.getErrorMessages().size(), metrics.getErrorCount() + metrics.getWarningCount() + metrics.getInformationCount());
+        assertTrue(metrics.getErrorCount() >= 2);
+        assertTrue(metrics.getProfileResolutionNanos() > 0);
+        assertTrue(metrics.getTerminologyNanos() > 0);
+        assertTrue(metrics.getInstanceValidationNanos() > 0);
+        assertTrue(metrics.getProfileResolutionNanos() + metrics.getTerminologyNanos() + metrics.getInstanceValidationNanos()
+            + metrics.getResponseBuildingNanos() <= metrics.getTotalNanos());
+    }
+
+    @Test
+    void cache_hits_have_no_phase_timings() {
+        String resourceText = "{\"resourceType\":\"Observation\",\"status\":\"final\",\"code\":{\"text\":\"weight\"}}";
+
+        validator.validate(resourceText);
+        validator.validate(resourceText);
+
+        assertEquals(2, recorded.size());
+        assertFalse(recorded.get(0).isCacheHit());
+        ValidationMetrics hit = recorded.get(1);
+        assertTrue(hit.isCacheHit());
+        assertEquals("Observation", hit.getResourceType());
+        assertEquals(0, hit.getProfileResolutionNanos() + hit.getTerminologyNanos() + hit.getInstanceValidationNanos() + hit.getResponseBuildingNanos());
+    }
+
+    @Test
+    void invalid_json() {
+        validator.validate("{invalid");
+
+        ValidationMetrics metrics = recorded.get(0);
+        assertEquals(ValidationMetrics.UNKNOWN_RESOURCE_TYPE, metrics.getResourceType());
+        assertFalse(metrics.isCacheHit());
+        assertEquals(1, metrics.getErrorCount());
+    }
+
+    @Test
+    void made_up_resource_types_are_unknown() {
+        validator.validate("{\"resourceType\":\"MadeUp12345\"}");
+
+        assertEquals(ValidationMetrics.UNKNOWN_RESOURCE_TYPE, recorded.get(0).getResourceType());
+    }
+
+    @Test
+    void resource_type_sniffing() {
+        assertEquals(Optional.of("Patient"), ResourceTypeSniffer.sniff("{\"id\":\"1\",\"meta\":{\"resourceType\":\"Nested\"},\"resourceType\":\"Patient\"}"));
+        assertEquals(Optional.of("Bundle"), ResourceTypeSniffer.sniff("{\"resourceType\":\"Bundle\",\"entry\":[{\"resource\":{\"resourceType\":\"Patient\"}}]}"));
+        assertEquals(Optional.empty(), ResourceTypeSniffer.sniff("{\"resourceType\":1}"));
+        assertEquals(Optional.empty(), ResourceTypeSniffer.sniff("[{\"resourceType\":\"Patient\"}]"));
+        assertEquals(Optional.empty(), ResourceTypeSniffer.sniff("{invalid"));
+        assertEquals(Optional.empty(), ResourceTypeSniffer.sniff(null));
+    }
+
+    @Test
+    void embedded_metric_format_line() {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        EmbeddedMetricFormatSink sink = new EmbeddedMetricFormatSink(new PrintStream(out, true), "Test");
+
+        sink.record(ValidationMetrics.builder()
+            .fhirVersion(Validator.FHIR_R4)
+            .resourceType("Patient")
+            .payloadBytes(42)
+            .totalNanos(12_500_000)
+            .errorCount(3)
+            .successful(false)
+            .build());
+
+        String line = new String(out.toByteArray(), StandardCharsets.UTF_8).trim();
+        JsonObject json = JsonParser.parseString(line).getAsJsonObject();
+        JsonObject metricDirective = json.getAsJsonObject("_aws").getAsJsonArray("CloudWatchMetrics").get(0).getAsJsonObject();
+        assertFalse(line.contains("\n"));
+        assertEquals("Test", metricDirective.get("Namespace").getAsString());
+        assertEquals("[[\"FhirVersion\",\"ResourceType\"]]", metricDirective.get("Dimensions").toString());
+        assertEquals("Patient", json.get("ResourceType").getAsString());
+        assertEquals(12.5, json.get("Latency").getAsDouble());
+        assertEquals(42, json.get("PayloadSize").getAsLong());
+        assertEquals(3, json.get("ErrorCount").getAsInt());
+        assertFalse(json.get("Successful").getAsBoolean());
+    }
+}
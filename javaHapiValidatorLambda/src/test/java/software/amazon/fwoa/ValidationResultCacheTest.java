@@ -0,0 +1,112 @@
+/*
+ * Copyright Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package software.amazon.fwoa;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+
+import com.google.common.collect.ImmutableList;
+
+import org.junit.jupiter.api.Test;
+
+class ValidationResultCacheTest {
+
+    private final AtomicInteger validations = new AtomicInteger();
+
+    private final Function<String, ValidatorResponse> validate = resource -> {
+        validations.incrementAndGet();
+        return ValidatorResponse.builder().isSuccessful(true).errorMessages(ImmutableList.of()).build();
+    };
+
+    @Test
+    void identical_payloads_are_validated_once() {
+        ValidationResultCache cache = new ValidationResultCache(10, 60, Validator.FHIR_R4, "fingerprint");
+
+        ValidatorResponse first = cache.get("{\"resourceType\":\"Patient\",\"gender\":\"female\"}", ValidationOptions.DEFAULT, validate);
+        ValidatorResponse second = cache.get("{ \"resourceType\" : \"Patient\",\n  \"gender\": \"female\" }", ValidationOptions.DEFAULT, validate);
+
+        assertSame(first, second);
+        assertEquals(1, validations.get());
+        assertEquals(1, cache.stats().hitCount());
+        assertEquals(1, cache.stats().missCount());
+    }
+
+    @Test
+    void different_payloads_are_not_shared() {
+        ValidationResultCache cache = new ValidationResultCache(10, 60, Validator.FHIR_R4, "fingerprint");
+
+        cache.get("{\"resourceType\":\"Patient\",\"gender\":\"female\"}", ValidationOptions.DEFAULT, validate);
+        cache.get("{\"resourceType\":\"Patient\",\"gender\":\"male\"}", ValidationOptions.DEFAULT, validate);
+
+        assertEquals(2, validations.get());
+        assertEquals(2, cache.size());
+    }
+
+    @Test
+    void normalization_keeps_significant_differences() {
+        ValidationResultCache cache = new ValidationResultCache(10, 60, Validator.FHIR_R4, "fingerprint");
+
+        cache.get("{\"resourceType\":\"Observation\",\"valueQuantity\":{\"value\":1.50}}", ValidationOptions.DEFAULT, validate);
+        cache.get("{\"resourceType\":\"Observation\",\"valueQuantity\":{\"value\":1.5}}", ValidationOptions.DEFAULT, validate);
+        cache.get("{\"resourceType\":\"Patient\",\"gender\":\"male\"}", ValidationOptions.DEFAULT, validate);
+        cache.get("{\"resourceType\":\"Patient\",\"gender\":\"male\",\"gender\":\"male\"}", ValidationOptions.DEFAULT, validate);
+
+        assertEquals(4, validations.get());
+    }
+
+    @Test
+    void different_fingerprints_are_not_shared() {
+        ValidationResultCache cache = new ValidationResultCache(10, 60, Validator.FHIR_R4, "fingerprint");
+        ValidationResultCache otherIgsCache = new ValidationResultCache(10, 60, Validator.FHIR_R4, "other-fingerprint");
+
+        String resource = "{\"resourceType\":\"Patient\"}";
+        cache.get(resource, ValidationOptions.DEFAULT, validate);
+        otherIgsCache.get(resource, ValidationOptions.DEFAULT, validate);
+
+        assertEquals(2, validations.get());
+    }
+
+    @Test
+    void different_options_are_not_shared() {
+        ValidationResultCache cache = new ValidationResultCache(10, 60, Validator.FHIR_R4, "fingerprint");
+
+        String resource = "{\"resourceType\":\"Patient\"}";
+        cache.get(resource, ValidationOptions.DEFAULT, validate);
+        cache.get(resource, ValidationOptions.FAIL_FAST, validate);
+        cache.get(resource, ValidationOptions.builder().maxErrors(1).build(), validate);
+        cache.get(resource, ValidationOptions.builder().maxErrors(1).structuralPrecheck(true).build(), validate);
+
+        assertEquals(3, validations.get());
+    }
+
+    @Test
+    void invalid_json_is_not_cached() {
+        ValidationResultCache cache = new ValidationResultCache(10, 60, Validator.FHIR_R4, "fingerprint");
+
+        cache.get("{a:<>}}}", ValidationOptions.DEFAULT, validate);
+        cache.get("{a:<>}}}", ValidationOptions.DEFAULT, validate);
+        cache.get("{resourceType:\"Patient\"}", ValidationOptions.DEFAULT, validate);
+        cache.get(null, ValidationOptions.DEFAULT, validate);
+
+        assertEquals(4, validations.get());
+        assertEquals(0, cache.size());
+    }
+
+    @Test
+    void bounded_size() {
+        ValidationResultCache cache = new ValidationResultCache(2, 60, Validator.FHIR_R4, "fingerprint");
+
+        for (int i = 0; i < 5; i++) {
+            cache.get("{\"resourceType\":\"Patient\",\"id\":\"" + i + "\"}", ValidationOptions.DEFAULT, validate);
+        }
+
+        assertEquals(2, cache.size());
+        assertEquals(3, cache.stats().evictionCount());
+    }
+}
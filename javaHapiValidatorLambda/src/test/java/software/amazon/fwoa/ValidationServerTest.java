@@ -0,0 +1,192 @@
+/*
+ * Copyright Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package software.amazon.fwoa;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.CountDownLatch;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.io.ByteStreams;
+
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+class ValidationServerTest {
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+    private static final String PATIENT = "{\"resourceType\":\"Patient\",\"gender\":\"female\"}";
+    private static final String INVALID_PATIENT = "{\"resourceType\":\"Patient\",\"gender\":\"femme\"}";
+
+    static ValidationServer server;
+    static Validator validator;
+
+    @BeforeAll
+    static void setup() throws IOException {
+        ValidationServerConfig config = ValidationServerConfig.builder()
+            .port(0)
+            .implementationGuidesFolder("testImplementationGuides-r4")
+            .workerThreads(1)
+            .queueCapacity(0)
+            .validatorPoolSize(1)
+            .maxRequestBytes(1024)
+            .warmUp(false)
+            .implementationGuideSets(ImmutableSet.of("noImplementationGuides"))
+            .build();
+        server = new ValidationServer(config);
+        server.start();
+        validator = new Validator(Validator.FHIR_R4, "testImplementationGuides-r4");
+    }
+
+    @AfterAll
+    static void tearDown() {
+        server.close();
+    }
+
+    @Test
+    void validate() throws IOException {
+        assertResponse(200, toJson(validator.validate(INVALID_PATIENT)), request("POST", "/validate", INVALID_PATIENT));
+        assertResponse(200, toJson(validator.validate(INVALID_PATIENT, ValidationOptions.FAIL_FAST)),
+            request("POST", "/validate?failFast=true", INVALID_PATIENT));
+        assertResponse(200, toJson(validator.validate(INVALID_PATIENT, ValidationOptions.builder().groupMessages(true).maxMessages(1).build())),
+            request("POST", "/validate?groupMessages=true&maxMessages=1", INVALID_PATIENT));
+    }
+
+    @Test
+    void validate_operation_outcome() throws IOException {
+        Response response = request("POST", "/validate?format=OperationOutcome", INVALID_PATIENT);
+
+        assertEquals(200, response.status);
+        assertEquals("OperationOutcome", response.body.get("resourceType").asText());
+        assertEquals("Patient.gender", response.body.get("issue").get(0).get("location").get(0).asText());
+    }
+
+    @Test
+    void validate_batch() throws IOException {
+        String batch = "[" + PATIENT + "," + INVALID_PATIENT + "]";
+
+        Response response = request("POST", "/validate/batch", batch);
+
+        assertEquals(200, response.status);
+        assertEquals(2, response.body.size());
+        assertEquals(toJson(validator.validate(PATIENT)), response.body.get(0));
+        assertEquals(toJson(validator.validate(INVALID_PATIENT)), response.body.get(1));
+        assertEquals(toJson(validator.validate(INVALID_PATIENT, ValidationOptions.builder().maxMessages(1).build())),
+            request("POST", "/validate/batch?maxMessages=1", batch).body.get(1));
+    }
+
+    @Test
+    void validate_with_an_implementation_guide_set() throws IOException {
+        String usCorePatient = "{\"resourceType\":\"Patient\",\"meta\":{\"profile\":[\"http://hl7.org/fhir/us/core/StructureDefinition/us-core-patient\"]}}";
+
+        Response response = request("POST", "/validate?implementationGuides=noImplementationGuides", usCorePatient);
+
+        assertEquals(200, response.status);
+        assertTrue(response.body.get("errorMessages").toString().contains("has not been checked because it is unknown"));
+        assertEquals(1, request("GET", "/health", null).body.get("implementationGuideSets").get("validators").asInt());
+        assertEquals(400, request("POST", "/validate?implementationGuides=otherImplementationGuides", PATIENT).status);
+        assertEquals(toJson(validator.validate(usCorePatient)),
+            request("POST", "/validate?implementationGuides=testImplementationGuides-r4", usCorePatient).body);
+    }
+
+    @Test
+    void query_parameters_are_url_decoded() {
+        assertEquals(ValidationOptions.builder().maxErrors(2).groupMessages(true).build(),
+            ValidationServer.parseOptions("maxErrors=%32&group%4Dessages=true&other"));
+        assertEquals(ResponseFormat.OPERATION_OUTCOME, ValidationServer.parseFormat("format=Operation%4Futcome"));
+        assertEquals("us core/r4", ValidationServer.parseImplementationGuides("implementationGuides=us+core%2Fr4"));
+        assertEquals(ResponseFormat.VALIDATOR_RESPONSE, ValidationServer.parseFormat(null));
+        assertThrows(IllegalArgumentException.class, () -> ValidationServer.parseQuery("maxErrors=%zz"));
+    }
+
+    @Test
+    void health() throws IOException {
+        Response response = request("GET", "/health", null);
+
+        assertEquals(200, response.status);
+        assertEquals("UP", response.body.get("status").asText());
+        assertEquals(1, response.body.get("validators").asInt());
+    }
+
+    @Test
+    void invalid_requests() throws IOException {
+        assertEquals(405, request("GET", "/validate", null).status);
+        assertEquals(404, request("POST", "/validateX", PATIENT).status);
+        assertEquals(413, request("POST", "/validate", new String(new char[2048]).replace('\0', ' ') + PATIENT).status);
+        assertEquals(400, request("POST", "/validate?maxErrors=x", PATIENT).status);
+        assertEquals(400, request("POST", "/validate?format=xml", PATIENT).status);
+    }
+
+    @Test
+    void requests_are_rejected_when_the_workers_are_busy() throws Exception {
+        CountDownLatch busy = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        server.getWorkers().execute(() -> {
+            busy.countDown();
+            try {
+                release.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        });
+        busy.await();
+        try {
+            Response response = request("POST", "/validate", PATIENT);
+
+            assertEquals(503, response.status);
+            assertEquals("1", response.retryAfter);
+            assertEquals(200, request("GET", "/health", null).status);
+        } finally {
+            release.countDown();
+        }
+    }
+
+    private static JsonNode toJson(ValidatorResponse response) {
+        return MAPPER.valueToTree(response);
+    }
+
+    private static void assertResponse(int expectedStatus, JsonNode expectedBody, Response response) {
+        assertEquals(expectedStatus, response.status);
+        assertEquals(expectedBody, response.body);
+    }
+
+    private static Response request(String method, String path, String body) throws IOException {
+        HttpURLConnection connection = (HttpURLConnection) new URL("http://localhost:" + server.getPort() + path).openConnection();
+        connection.setRequestMethod(method);
+        if (body != null) {
+            connection.setDoOutput(true);
+            try (OutputStream out = connection.getOutputStream()) {
+                out.write(body.getBytes(StandardCharsets.UTF_8));
+            }
+        }
+        int status = connection.getResponseCode();
+        InputStream in = status < 400 ? connection.getInputStream() : connection.getErrorStream();
+        String responseBody = new String(ByteStreams.toByteArray(in), StandardCharsets.UTF_8);
+        return new Response(status, MAPPER.readTree(responseBody), connection.getHeaderField("Retry-After"));
+    }
+
+    private static class Response {
+        private final int status;
+        private final JsonNode body;
+        private final String retryAfter;
+
+        Response(int status, JsonNode body, String retryAfter) {
+            this.status = status;
+            this.body = body;
+            this.retryAfter = retryAfter;
+        }
+    }
+}
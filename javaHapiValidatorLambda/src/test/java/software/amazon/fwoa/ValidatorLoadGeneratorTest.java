@@ -0,0 +1,67 @@
+/*
+ * Copyright Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package software.amazon.fwoa;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import com.google.common.collect.ImmutableList;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class ValidatorLoadGeneratorTest {
+
+    @Test
+    void corpus_is_grouped_by_resource_type(@TempDir Path directory) throws IOException {
+        Files.write(directory.resolve("patient.json"), "{\"resourceType\":\"Patient\"}".getBytes(StandardCharsets.UTF_8));
+        Files.write(directory.resolve("observations.ndjson"),
+            "{\"resourceType\":\"Observation\"}\n\n{\"resourceType\":\"Observation\"}\n{a:<>}\n".getBytes(StandardCharsets.UTF_8));
+        Files.write(directory.resolve("README.md"), "not a resource".getBytes(StandardCharsets.UTF_8));
+
+        Map<String, List<String>> corpus = ValidatorLoadGenerator.byResourceType(ValidatorLoadGenerator.readCorpus(directory));
+
+        assertEquals(ImmutableList.of("Observation", "Patient", ValidationMetrics.UNKNOWN_RESOURCE_TYPE), ImmutableList.copyOf(corpus.keySet()));
+        assertEquals(2, corpus.get("Observation").size());
+        assertEquals(1, corpus.get("Patient").size());
+        assertEquals(1, corpus.get(ValidationMetrics.UNKNOWN_RESOURCE_TYPE).size());
+    }
+
+    @Test
+    void run_reports_latency_percentiles() {
+        ValidatorLoadGenerator loadTest = new ValidatorLoadGenerator(new Validator());
+        List<String> resources = ImmutableList.of(Handler.SOME_SYNTHEA_PATIENT, "{\"resourceType\":\"Patient\",\"gender\":\"femme\"}");
+
+        LoadTestResult result = loadTest.run("Patient", resources, 2, TimeUnit.MILLISECONDS.toNanos(500));
+
+        assertEquals("Patient", result.getResourceType());
+        assertEquals(2, result.getConcurrency());
+        assertTrue(result.getValidations() > 0);
+        assertTrue(result.getThroughputPerSecond() > 0);
+        assertTrue(result.getP50Millis() <= result.getP95Millis());
+        assertTrue(result.getP95Millis() <= result.getP99Millis());
+        assertTrue(result.getP99Millis() <= result.getMaxMillis());
+        assertTrue(result.getHeapPeakBytes() > 0);
+    }
+
+    @Test
+    void nearest_rank_percentiles() {
+        long[] latencies = {1_000_000, 2_000_000, 3_000_000, 4_000_000};
+
+        assertEquals(2, ValidatorLoadGenerator.percentileMillis(latencies, 0.5));
+        assertEquals(4, ValidatorLoadGenerator.percentileMillis(latencies, 0.99));
+        assertEquals(1, ValidatorLoadGenerator.percentileMillis(latencies, 0));
+        assertEquals(0, ValidatorLoadGenerator.percentileMillis(new long[0], 0.5));
+    }
+}
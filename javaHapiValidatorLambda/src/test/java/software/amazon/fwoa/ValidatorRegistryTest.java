@@ -0,0 +1,79 @@
+/*
+ * Copyright Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package software.amazon.fwoa;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import org.junit.jupiter.api.Test;
+
+class ValidatorRegistryTest {
+    private static final String US_CORE_PATIENT = "{\"resourceType\":\"Patient\",\"meta\":{\"profile\":[\"http://hl7.org/fhir/us/core/StructureDefinition/us-core-patient\"]},\"gender\":\"female\"}";
+
+    @Test
+    void validators_are_built_once_per_implementation_guides() {
+        try (ValidatorRegistry registry = new ValidatorRegistry(ValidatorConfig.DEFAULT, 1024)) {
+            Validator usCore = registry.apply(Validator.FHIR_R4, "testImplementationGuides-r4", v -> v);
+            Validator noIgs = registry.apply(Validator.FHIR_R4, "noImplementationGuides", v -> v);
+
+            assertSame(usCore, registry.apply(Validator.FHIR_R4, "testImplementationGuides-r4", v -> v));
+            assertNotSame(usCore, noIgs);
+            assertTrue(usCore.validate(US_CORE_PATIENT).getErrorMessages().stream()
+                .anyMatch(m -> m.getMsg().contains("Patient.identifier: minimum required = 1")));
+            assertTrue(noIgs.validate(US_CORE_PATIENT).getErrorMessages().stream()
+                .anyMatch(m -> m.getMsg().contains("has not been checked because it is unknown")));
+            assertEquals(2, registry.stats().loadCount());
+            assertEquals(1, registry.stats().hitCount());
+            assertEquals(ValidatorRegistry.estimatedBytes(usCore) + ValidatorRegistry.estimatedBytes(noIgs), registry.estimatedBytes());
+        }
+    }
+
+    @Test
+    void least_recently_used_validators_are_evicted() {
+        // room for a single validator without implementation guides
+        long budgetMegabytes = ValidatorRegistry.VALIDATOR_ESTIMATED_BYTES * 3 / 2 / 1024 / 1024;
+        try (ValidatorRegistry registry = new ValidatorRegistry(ValidatorConfig.DEFAULT, budgetMegabytes)) {
+            Validator first = registry.apply(Validator.FHIR_STU3, "noImplementationGuides-1", v -> v);
+            Validator second = registry.apply(Validator.FHIR_STU3, "noImplementationGuides-2", v -> v);
+
+            assertEquals(1, registry.size());
+            assertEquals(1, registry.stats().evictionCount());
+            assertSame(second, registry.apply(Validator.FHIR_STU3, "noImplementationGuides-2", v -> v));
+            assertNotSame(first, registry.apply(Validator.FHIR_STU3, "noImplementationGuides-1", v -> v));
+            assertEquals(2, registry.stats().evictionCount());
+            assertTrue(first.isClosed());
+        }
+    }
+
+    @Test
+    void evicted_validators_are_closed_once_released() {
+        long budgetMegabytes = ValidatorRegistry.VALIDATOR_ESTIMATED_BYTES * 3 / 2 / 1024 / 1024;
+        try (ValidatorRegistry registry = new ValidatorRegistry(ValidatorConfig.DEFAULT, budgetMegabytes)) {
+            Validator first = registry.apply(Validator.FHIR_STU3, "noImplementationGuides-1", validator -> {
+                registry.apply(Validator.FHIR_STU3, "noImplementationGuides-2", v -> v);
+                assertEquals(1, registry.stats().evictionCount());
+                // still usable by the caller that holds it
+                assertFalse(validator.isClosed());
+                assertEquals(2, validator.validateBatch("[{},{}]").size());
+                return validator;
+            });
+
+            assertTrue(first.isClosed());
+        }
+    }
+
+    @Test
+    void invalid_fhir_version() {
+        try (ValidatorRegistry registry = new ValidatorRegistry(ValidatorConfig.DEFAULT, 1024)) {
+            RuntimeException e = assertThrows(RuntimeException.class, () -> registry.apply("1.0.2", "testImplementationGuides-r4", v -> v));
+            assertEquals("Invalid FHIR version 1.0.2", e.getMessage());
+        }
+    }
+}
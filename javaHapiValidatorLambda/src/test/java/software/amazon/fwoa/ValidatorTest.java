@@ -6,8 +6,20 @@
 package software.amazon.fwoa;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+import java.util.stream.LongStream;
+
 import com.google.common.collect.ImmutableList;
 
 import org.junit.jupiter.api.BeforeAll;
@@ -40,6 +52,19 @@ class ValidatorTest {
         assertTrue(validatorStu3.validate(resourceText).isSuccessful());
     }
 
+    @Test
+    void us_core_profile() {
+        String resourceText = "{\"resourceType\":\"Patient\",\"meta\":{\"profile\":[\"http://hl7.org/fhir/us/core/StructureDefinition/us-core-patient\"]},\"gender\":\"female\"}";
+
+        ValidatorResponse response = validator.validate(resourceText);
+        ValidatorResponse responseStu3 = validatorStu3.validate(resourceText);
+
+        assertFalse(response.isSuccessful());
+        assertTrue(response.getErrorMessages().stream().anyMatch(m -> m.getMsg().contains("Patient.identifier: minimum required = 1")));
+        assertFalse(responseStu3.isSuccessful());
+        assertTrue(responseStu3.getErrorMessages().stream().anyMatch(m -> m.getMsg().contains("Patient.identifier: minimum required = 1")));
+    }
+
     @Test
     void empty() {
         String resourceText = "";
@@ -95,4 +120,226 @@ class ValidatorTest {
         assertEquals(validator.validate(resourceText), INVALID_JSON_VALIDATOR_RESPONSE);
         assertEquals(validatorStu3.validate(resourceText), INVALID_JSON_VALIDATOR_RESPONSE);
     }
+
+    @Test
+    void batch_array() {
+        String patient = "{\"resourceType\":\"Patient\",\"gender\":\"female\"}";
+        String invalidPatient = "{\"resourceType\":\"Patient\",\"gender\":\"not-a-gender\"}";
+        String resourcesText = "[" + patient + ",123," + invalidPatient + ",null," + patient + "]";
+
+        List<ValidatorResponse> responses = validator.validateBatch(resourcesText);
+
+        assertEquals(5, responses.size());
+        assertTrue(responses.get(0).isSuccessful());
+        assertEquals(INVALID_JSON_VALIDATOR_RESPONSE, responses.get(1));
+        assertEquals(validator.validate(invalidPatient), responses.get(2));
+        assertFalse(responses.get(2).isSuccessful());
+        assertEquals(INVALID_JSON_VALIDATOR_RESPONSE, responses.get(3));
+        assertTrue(responses.get(4).isSuccessful());
+    }
+
+    @Test
+    void batch_sequentially() {
+        String batch = "[{\"resourceType\":\"Patient\",\"gender\":\"female\"},123,{\"resourceType\":\"Patient\",\"gender\":\"not-a-gender\"}]";
+        Validator closedValidator = new Validator(Validator.FHIR_R4, "testImplementationGuides-r4");
+        closedValidator.close();
+
+        assertEquals(validator.validateBatch(batch), validator.validateBatchSequentially(batch, ValidationOptions.DEFAULT));
+        // no batch threads are needed
+        assertEquals(validator.validateBatch(batch), closedValidator.validateBatchSequentially(batch, ValidationOptions.DEFAULT));
+    }
+
+    @Test
+    void batch_bundle_entries() {
+        String bundleText = "{\"resourceType\":\"Bundle\",\"type\":\"batch\",\"entry\":["
+            + "{\"resource\":{\"resourceType\":\"Patient\",\"gender\":\"female\"}},"
+            + "{\"request\":{\"method\":\"DELETE\",\"url\":\"Patient/1\"}},"
+            + "{\"resource\":{\"resourceType\":\"Patient\",\"gender\":\"not-a-gender\"}}]}";
+
+        List<ValidatorResponse> responses = validator.validateBatch(bundleText);
+
+        assertEquals(3, responses.size());
+        assertTrue(responses.get(0).isSuccessful());
+        assertEquals(Validator.NO_RESOURCE_RESPONSE, responses.get(1));
+        assertFalse(responses.get(2).isSuccessful());
+    }
+
+    @Test
+    void batch_entries_are_validated_from_their_original_text() {
+        String duplicateKeys = "{\"resourceType\":\"Patient\", \"gender\":\"female\", \"gender\":\"not-a-gender\"}";
+        String bundleText = "{\"entry\":[{\"resource\":" + duplicateKeys + "},{\"fullUrl\":\"urn:uuid:1\"}],\"resourceType\":\"Bundle\"}";
+
+        assertEquals(Arrays.asList(validator.validate(duplicateKeys)), validator.validateBatch("[" + duplicateKeys + "]"));
+        assertEquals(Arrays.asList(validator.validate(duplicateKeys), Validator.NO_RESOURCE_RESPONSE), validator.validateBatch(bundleText));
+    }
+
+    @Test
+    void batch_lenient_json_is_invalid() {
+        // rejected by validate, a batch that contains them is not valid JSON either
+        String unquotedKeys = "{resourceType:\"Patient\"}";
+        String singleQuotes = "{'resourceType':'Patient'}";
+
+        assertFalse(validator.validate(unquotedKeys).isSuccessful());
+        assertFalse(validator.validate(singleQuotes).isSuccessful());
+        assertEquals(Arrays.asList(INVALID_JSON_VALIDATOR_RESPONSE), validator.validateBatch("[" + unquotedKeys + "]"));
+        assertEquals(Arrays.asList(INVALID_JSON_VALIDATOR_RESPONSE), validator.validateBatch("[" + singleQuotes + "]"));
+        assertEquals(Arrays.asList(INVALID_JSON_VALIDATOR_RESPONSE), validator.validateBatch("[{\"resourceType\":\"Patient\"}] []"));
+    }
+
+    @Test
+    void batch_invalid_json() {
+        assertEquals(Arrays.asList(INVALID_JSON_VALIDATOR_RESPONSE), validator.validateBatch("{a:<>}}}"));
+        assertEquals(Arrays.asList(INVALID_JSON_VALIDATOR_RESPONSE), validatorStu3.validateBatch(null));
+        assertEquals(Arrays.asList(INVALID_JSON_VALIDATOR_RESPONSE), validatorStu3.validateBatch("123"));
+    }
+
+    @Test
+    void ndjson_responses_in_line_order() throws Exception {
+        // more lines than the read-ahead window, with a blank line and an invalid line in the middle
+        List<String> lines = IntStream.range(0, 40)
+            .mapToObj(i -> i == 10 ? "" : i == 20 ? "{a:<>}}}" : i % 2 == 0
+                ? "{\"resourceType\":\"Patient\",\"id\":\"" + i + "\"}"
+                : "{\"resourceType\":\"Patient\",\"gender\":\"femme\"}")
+            .collect(Collectors.toList());
+        List<Long> lineNumbers = new ArrayList<>();
+        List<ValidatorResponse> responses = new ArrayList<>();
+
+        NdjsonValidationSummary summary = validator.validateNdjson(toInputStream(String.join("\n", lines) + "\n"), (lineNumber, response) -> {
+            lineNumbers.add(lineNumber);
+            responses.add(response);
+        });
+
+        assertEquals(39, summary.getValidatedLines());
+        assertEquals(21, summary.getFailedLines());
+        assertEquals(LongStream.rangeClosed(1, 40).filter(n -> n != 11).boxed().collect(Collectors.toList()), lineNumbers);
+        for (int i = 0; i < lineNumbers.size(); i++) {
+            String line = lines.get(lineNumbers.get(i).intValue() - 1);
+            assertEquals(validator.validate(line), responses.get(i), line);
+        }
+    }
+
+    @Test
+    void ndjson_output() throws Exception {
+        String input = "{\"resourceType\":\"Patient\"}\n{a:<>}}}\n";
+        ByteArrayOutputStream all = new ByteArrayOutputStream();
+        ByteArrayOutputStream failuresOnly = new ByteArrayOutputStream();
+
+        validator.validateNdjson(toInputStream(input), all, false);
+        validator.validateNdjson(toInputStream(input), failuresOnly, true);
+
+        String failure = "{\"line\":2,\"successful\":false,\"errorMessages\":[{\"severity\":\"error\",\"msg\":\"Invalid JSON\"}]}\n";
+        assertEquals("{\"line\":1,\"successful\":true,\"errorMessages\":[]}\n" + failure, new String(all.toByteArray(), StandardCharsets.UTF_8));
+        assertEquals(failure, new String(failuresOnly.toByteArray(), StandardCharsets.UTF_8));
+    }
+
+    @Test
+    void ndjson_options_apply_to_each_line() throws Exception {
+        String resourceText = "{\"resourceType\":\"Patient\",\"gender\":\"femme\",\"birthDate\":\"yesterday\",\"name\":\"x\"}";
+        List<ValidatorResponse> responses = new ArrayList<>();
+
+        validator.validateNdjson(toInputStream(resourceText + "\n" + resourceText + "\n"), (lineNumber, response) -> responses.add(response),
+            ValidationOptions.FAIL_FAST);
+
+        assertEquals(Arrays.asList(validator.validate(resourceText, ValidationOptions.FAIL_FAST),
+            validator.validate(resourceText, ValidationOptions.FAIL_FAST)), responses);
+        assertEquals(1, responses.get(0).getErrorMessages().size());
+    }
+
+    @Test
+    void max_errors() {
+        String resourceText = "{\"resourceType\":\"Patient\",\"gender\":\"femme\",\"birthDate\":\"yesterday\",\"name\":\"x\"}";
+
+        ValidatorResponse full = validator.validate(resourceText);
+        ValidatorResponse failFast = validator.validate(resourceText, ValidationOptions.builder().maxErrors(1).build());
+        ValidatorResponse twoErrors = validator.validate(resourceText, ValidationOptions.builder().maxErrors(2).build());
+
+        assertTrue(full.getErrorMessages().size() > 2);
+        assertFalse(failFast.isSuccessful());
+        assertEquals(full.getErrorMessages().subList(0, 1), failFast.getErrorMessages());
+        assertEquals(full.getErrorMessages().subList(0, 2), twoErrors.getErrorMessages());
+    }
+
+    @Test
+    void group_messages() {
+        String entry = "{\"resource\":{\"resourceType\":\"Patient\",\"gender\":\"femme\"}}";
+        String bundle = "{\"resourceType\":\"Bundle\",\"type\":\"collection\",\"entry\":[" + entry + "," + entry + "," + entry + "]}";
+
+        ValidatorResponse full = validator.validate(bundle);
+        ValidatorResponse grouped = validator.validate(bundle, ValidationOptions.builder().groupMessages(true).build());
+
+        List<ValidatorErrorMessage> genderMessages = full.getErrorMessages().stream()
+            .filter(message -> message.getMsg().contains("femme"))
+            .collect(Collectors.toList());
+        assertEquals(3, genderMessages.size());
+        String text = genderMessages.get(0).getMsg().substring(genderMessages.get(0).getMsg().indexOf(" - ") + " - ".length());
+        List<String> locations = genderMessages.stream()
+            .map(message -> message.getMsg().substring(0, message.getMsg().indexOf(" - ")))
+            .collect(Collectors.toList());
+
+        assertEquals(full.isSuccessful(), grouped.isSuccessful());
+        assertTrue(grouped.getErrorMessages().size() <= full.getErrorMessages().size() - 2);
+        ValidatorErrorMessage groupedGender = ValidatorErrorMessage.of(genderMessages.get(0).getSeverity(), locations, text);
+        assertTrue(grouped.getErrorMessages().contains(groupedGender));
+        assertEquals(String.join(", ", locations) + " - " + text, groupedGender.getMsg());
+    }
+
+    @Test
+    void max_messages() {
+        String resourceText = "{\"resourceType\":\"Patient\",\"gender\":\"femme\",\"birthDate\":\"yesterday\",\"name\":\"x\"}";
+
+        ValidatorResponse full = validator.validate(resourceText);
+        ValidatorResponse capped = validator.validate(resourceText, ValidationOptions.builder().maxMessages(1).build());
+
+        assertEquals(full.getErrorMessages().get(0), capped.getErrorMessages().get(0));
+        assertEquals("information", capped.getErrorMessages().get(1).getSeverity());
+        assertTrue(capped.getErrorMessages().get(1).getMsg().startsWith((full.getErrorMessages().size() - 1) + " more messages truncated ("));
+        assertEquals(2, capped.getErrorMessages().size());
+        assertEquals(full, validator.validate(resourceText, ValidationOptions.builder().maxMessages(full.getErrorMessages().size()).build()));
+    }
+
+    @Test
+    void batch_options_apply_to_each_resource() {
+        String invalidPatient = "{\"resourceType\":\"Patient\",\"gender\":\"femme\",\"birthDate\":\"yesterday\",\"name\":\"x\"}";
+        String patient = "{\"resourceType\":\"Patient\",\"gender\":\"female\"}";
+        String batch = "[" + invalidPatient + "," + patient + "," + invalidPatient + "]";
+
+        for (ValidationOptions options : Arrays.asList(ValidationOptions.FAIL_FAST, ValidationOptions.builder().maxMessages(1).build(),
+                ValidationOptions.builder().groupMessages(true).build())) {
+            ValidatorResponse expected = validator.validate(invalidPatient, options);
+            assertEquals(Arrays.asList(expected, validator.validate(patient, options), expected), validator.validateBatch(batch, options));
+        }
+    }
+
+    @Test
+    void structural_precheck_reports_the_same_errors_as_the_full_validation() {
+        List<String> resources = Arrays.asList(
+            "{\"gender\":\"female\"}",
+            "{\"resourceType\":\"Foo\"}",
+            "{\"resourceType\":5}",
+            "[{\"resourceType\":\"Patient\"}]",
+            "{a:<>}}}",
+            "{\"resourceType\":\"Patient\",\"meta\":{\"profile\":[\"http://example.org/StructureDefinition/unknown\"]}}",
+            "{\"meta\":{\"profile\":{}},\"resourceType\":\"Patient\"}",
+            "{\"resourceType\":\"Patient\",\"meta\":{\"profile\":[\"http://hl7.org/fhir/us/core/StructureDefinition/us-core-patient\"]},\"identifier\":[{\"value\":\"1\"}],\"name\":[{\"family\":\"a\"}],\"gender\":\"female\"}",
+            "{\"resourceType\":\"Patient\",\"gender\":\"femme\"}");
+        ValidationOptions precheckOnly = ValidationOptions.builder().structuralPrecheck(true).build();
+
+        for (String resource : resources) {
+            assertEquals(validator.validate(resource), validator.validate(resource, precheckOnly), resource);
+            assertEquals(validatorStu3.validate(resource), validatorStu3.validate(resource, precheckOnly), resource);
+        }
+    }
+
+    @Test
+    void structural_precheck_rejects_malformed_meta() {
+        ValidatorResponse response = validator.validate("{\"resourceType\":\"Patient\",\"meta\":\"x\"}", ValidationOptions.FAIL_FAST);
+
+        assertEquals(ImmutableList.of(ValidatorErrorMessage.of("error", ImmutableList.of("Patient.meta"),
+            "This property must be an Object, not a primitive property")), response.getErrorMessages());
+        assertEquals("Patient.meta - This property must be an Object, not a primitive property", response.getErrorMessages().get(0).getMsg());
+    }
+
+    private static InputStream toInputStream(String text) {
+        return new ByteArrayInputStream(text.getBytes(StandardCharsets.UTF_8));
+    }
 }
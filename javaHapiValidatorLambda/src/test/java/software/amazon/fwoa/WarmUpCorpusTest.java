@@ -0,0 +1,64 @@
+/*
+ * Copyright Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package software.amazon.fwoa;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.List;
+import java.util.SortedMap;
+
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+
+import org.junit.jupiter.api.Test;
+
+class WarmUpCorpusTest {
+
+    @Test
+    void one_resource_per_implementation_guide_profile() {
+        Validator validator = new Validator(Validator.FHIR_R4, "testImplementationGuides-r4");
+        SortedMap<String, String> profiles = validator.getIgProfiles();
+
+        assertEquals(26, profiles.size());
+        assertEquals("Patient", profiles.get("http://hl7.org/fhir/us/core/StructureDefinition/us-core-patient"));
+        assertEquals("Observation", profiles.get("http://hl7.org/fhir/us/core/StructureDefinition/us-core-smokingstatus"));
+
+        List<String> corpus = WarmUpCorpus.load("missingWarmUpFolder", profiles);
+
+        assertEquals(profiles.size(), corpus.size());
+        for (String resource : corpus) {
+            // the profile is found and checked, the minimal resource is expected to be missing required elements
+            ValidatorResponse response = validator.validate(resource);
+            assertFalse(response.getErrorMessages().stream().anyMatch(m -> m.getMsg().contains("because it is unknown")), resource);
+        }
+    }
+
+    @Test
+    void profiled_resources_are_escaped() {
+        String profileUrl = "http://example.org/StructureDefinition/\"quoted\"\\path";
+
+        JsonObject resource = JsonParser.parseString(WarmUpCorpus.profiledResource("Patient", profileUrl)).getAsJsonObject();
+
+        assertEquals("Patient", resource.get("resourceType").getAsString());
+        assertEquals(profileUrl, resource.getAsJsonObject("meta").getAsJsonArray("profile").get(0).getAsString());
+        assertEquals("{\"resourceType\":\"Patient\",\"meta\":{\"profile\":[\"http://hl7.org/fhir/StructureDefinition/bp\"]}}",
+            WarmUpCorpus.profiledResource("Patient", "http://hl7.org/fhir/StructureDefinition/bp"));
+    }
+
+    @Test
+    void resources_of_the_warm_up_folder() {
+        Validator validator = new Validator(Validator.FHIR_R4, "testImplementationGuides-r4");
+
+        List<String> corpus = WarmUpCorpus.loadFolder(WarmUpCorpus.DEFAULT_WARM_UP_FOLDER);
+
+        assertEquals(3, corpus.size());
+        for (String resource : corpus) {
+            assertTrue(validator.validate(resource).isSuccessful(), resource);
+        }
+    }
+}
@@ -0,0 +1,43 @@
+/*
+ * Copyright Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package software.amazon.fwoa;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Creates the Lambda {@link Handler} the same way the Lambda runtime does, then validates each given file once, and prints how long each step took:
+ * <pre>
+ * java -cp target/fwoa-hapi-validator-dev.jar:target/test-classes software.amazon.fwoa.ColdStartReport [resource.json ...]
+ * </pre>
+ * The Lambda jar goes first on the classpath, as in the Lambda runtime, the report itself is a tool compiled with the test classes.
+ * It is also the training run that records the classes loaded at startup for the AppCDS archive, see the appcds profile of the pom.
+ * Compare the report with and without {@code -XX:SharedArchiveFile=target/appcds.jsa} to measure the archive.
+ */
+public class ColdStartReport {
+
+    public static void main(String[] args) throws IOException {
+        long jvmStartMillis = ManagementFactory.getRuntimeMXBean().getStartTime();
+        long start = System.nanoTime();
+        Handler handler = new Handler();
+        long initNanos = System.nanoTime() - start;
+
+        System.out.printf("JVM start to ready: %d ms%n", System.currentTimeMillis() - jvmStartMillis);
+        System.out.printf("Handler init: %d ms%n", TimeUnit.NANOSECONDS.toMillis(initNanos));
+        System.out.printf("Loaded classes: %d%n", ManagementFactory.getClassLoadingMXBean().getLoadedClassCount());
+
+        for (String file : args) {
+            String resource = new String(Files.readAllBytes(Paths.get(file)), StandardCharsets.UTF_8);
+            long requestStart = System.nanoTime();
+            ValidatorResponse response = handler.handleRequest(resource, null);
+            System.out.printf("First request %s: %.1f ms (successful: %s)%n", file, (System.nanoTime() - requestStart) / 1e6, response.isSuccessful());
+        }
+    }
+}
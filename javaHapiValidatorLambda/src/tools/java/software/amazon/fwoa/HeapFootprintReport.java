@@ -0,0 +1,135 @@
+/*
+ * Copyright Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package software.amazon.fwoa;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.SortedMap;
+
+import com.google.common.base.Splitter;
+import com.google.common.collect.ImmutableSet;
+
+import org.hl7.fhir.common.hapi.validation.support.CommonCodeSystemsTerminologyService;
+import org.hl7.fhir.common.hapi.validation.support.InMemoryTerminologyServerValidationSupport;
+import org.hl7.fhir.instance.model.api.IBaseResource;
+
+import ca.uhn.fhir.context.FhirContext;
+import ca.uhn.fhir.context.support.IValidationSupport;
+
+/**
+ * Prints the heap retained by each part of a validator, to see what the Lambda memory is spent on:
+ * <pre>
+ * mvn test-compile exec:exec -Dexec.executable=java -Dexec.classpathScope=test
+ *     -Dexec.args="-cp %classpath software.amazon.fwoa.HeapFootprintReport [--fhirVersion &lt;version&gt;]
+ *     [--implementationGuides &lt;folder&gt;] [--reducedMemory true] [--baseResourceTypes Patient,Observation]"
+ * </pre>
+ * The sizes are differences of the used heap after full collections, run it alone in its own JVM, hence exec:exec rather than exec:java,
+ * and without -XX:+DisableExplicitGC.
+ * The support modules are measured as they are created, in the order of the validator chain. An implementation guide is measured by the heap freed
+ * when its parsed resources are dropped. The validator line is what a warmed up validator adds on top of the shared FhirContext and base definitions:
+ * its own copy of the implementation guides, the validator chain and the caches filled by the warm-up.
+ */
+public class HeapFootprintReport {
+    private static final String USAGE = "Usage: HeapFootprintReport [--fhirVersion <version>] [--implementationGuides <folder>] "
+        + "[--reducedMemory true] [--baseResourceTypes Patient,Observation]";
+
+    // Keeps the measured objects reachable until the end of the report
+    private final List<Object> retained = new ArrayList<>();
+    private long usedBytes;
+
+    public static void main(String[] args) {
+        String fhirVersion = Validator.FHIR_R4;
+        String implementationGuidesFolder = Validator.DEFAULT_IMPLEMENTATION_GUIDES_FOLDER;
+        ValidatorConfig.ValidatorConfigBuilder config = ValidatorConfig.builder();
+        for (int i = 0; i < args.length; i += 2) {
+            if (i + 1 >= args.length) {
+                throw new IllegalArgumentException(USAGE);
+            }
+            String value = args[i + 1];
+            switch (args[i]) {
+                case "--fhirVersion":
+                    fhirVersion = value;
+                    break;
+                case "--implementationGuides":
+                    implementationGuidesFolder = value;
+                    break;
+                case "--reducedMemory":
+                    config.reducedMemory(Boolean.parseBoolean(value));
+                    break;
+                case "--baseResourceTypes":
+                    config.baseResourceTypes(ImmutableSet.copyOf(Splitter.on(',').trimResults().omitEmptyStrings().split(value)));
+                    break;
+                default:
+                    throw new IllegalArgumentException(USAGE);
+            }
+        }
+        new HeapFootprintReport().run(fhirVersion, implementationGuidesFolder, config.build());
+    }
+
+    private void run(String fhirVersion, String implementationGuidesFolder, ValidatorConfig config) {
+        System.out.printf("FHIR %s, %s, reduced memory: %s, base resource types: %s%n", fhirVersion, implementationGuidesFolder,
+            config.isReducedMemory(), config.getBaseResourceTypes() == null ? "all" : config.getBaseResourceTypes());
+        usedBytes = usedHeapAfterGc();
+        long startBytes = usedBytes;
+
+        FhirContext ctx = Validator.newFhirContext(fhirVersion);
+        for (String resourceType : ctx.getResourceTypes()) {
+            ctx.getResourceDefinition(resourceType);
+        }
+        measure("FhirContext with all the resource definitions", ctx);
+
+        IValidationSupport baseDefinitions = Validator.newBaseDefinitions(ctx, config);
+        // DefaultProfileValidationSupport loads its resources on first use
+        int baseResourceCount = ReducedBaseValidationSupport.fetchAllConformanceResources(baseDefinitions).size();
+        measure(baseDefinitions.getClass().getSimpleName() + " (" + baseResourceCount + " resources)", baseDefinitions);
+
+        measure("CommonCodeSystemsTerminologyService", new CommonCodeSystemsTerminologyService(ctx));
+        measure("InMemoryTerminologyServerValidationSupport", new InMemoryTerminologyServerValidationSupport(ctx));
+
+        // Each implementation guide is measured by the heap freed when its resources are dropped, which is its retained size
+        SortedMap<String, List<IBaseResource>> implementationGuides = new IgLoader(ctx, fhirVersion, implementationGuidesFolder, 1,
+            null, config.isReducedMemory()).loadByImplementationGuide();
+        measure("Implementation guides, parsed", implementationGuides);
+        for (String implementationGuide : new ArrayList<>(implementationGuides.keySet())) {
+            int resourceCount = implementationGuides.get(implementationGuide).size();
+            implementationGuides.remove(implementationGuide);
+            long freedBytes = usedBytes - (usedBytes = usedHeapAfterGc());
+            print("  " + implementationGuide + " (" + resourceCount + " resources)", freedBytes);
+        }
+
+        Validator validator = new Validator(fhirVersion, implementationGuidesFolder, config, ctx, baseDefinitions);
+        for (String resource : WarmUpCorpus.fromEnvironment(validator)) {
+            validator.validate(resource);
+        }
+        measure("Validator, warmed up, on top of the shared definitions", validator);
+
+        print("Total", usedBytes - startBytes);
+    }
+
+    private void measure(String label, Object object) {
+        retained.add(object);
+        long previousBytes = usedBytes;
+        usedBytes = usedHeapAfterGc();
+        print(label, usedBytes - previousBytes);
+    }
+
+    private static void print(String label, long bytes) {
+        System.out.printf("%-72s %8.1f MB%n", label, bytes / 1024.0 / 1024.0);
+    }
+
+    private static long usedHeapAfterGc() {
+        MemoryMXBean memory = ManagementFactory.getMemoryMXBean();
+        long used = Long.MAX_VALUE;
+        // Reference processing can leave garbage that only the next collection frees
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+            used = Math.min(used, memory.getHeapMemoryUsage().getUsed());
+        }
+        return used;
+    }
+}
@@ -0,0 +1,51 @@
+/*
+ * Copyright Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package software.amazon.fwoa;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+
+import ca.uhn.fhir.context.FhirContext;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Build step that precompiles the implementation guides on the classpath into an {@link IgSnapshot}.
+ * It is compiled and run by Maven in the prepare-package phase, also when the tests are skipped, unless -DigSnapshot.skip=true:
+ * <pre>
+ * IgSnapshotBuilder &lt;fhirVersion&gt; &lt;implementationGuidesFolder&gt; &lt;outputDirectory&gt;
+ * </pre>
+ */
+@Slf4j
+public class IgSnapshotBuilder {
+
+    public static void main(String[] args) throws IOException {
+        if (args.length != 3) {
+            throw new IllegalArgumentException("Usage: IgSnapshotBuilder <fhirVersion> <implementationGuidesFolder> <outputDirectory>");
+        }
+        build(args[0], args[1], new File(args[2]));
+    }
+
+    static void build(String fhirVersion, String implementationGuidesFolder, File outputDirectory) throws IOException {
+        File snapshotFile = new File(outputDirectory, IgSnapshot.resourcePath(implementationGuidesFolder, fhirVersion));
+        Files.deleteIfExists(snapshotFile.toPath());
+
+        FhirContext ctx = Validator.FHIR_R4.equals(fhirVersion) ? FhirContext.forR4() : FhirContext.forDstu3();
+        IgSnapshot snapshot = new IgLoader(ctx, fhirVersion, implementationGuidesFolder, Runtime.getRuntime().availableProcessors()).load();
+        if (snapshot.getResourceCount() == 0) {
+            log.info("No implementation guides found in {}, skipping the snapshot", implementationGuidesFolder);
+            return;
+        }
+
+        Files.createDirectories(snapshotFile.getParentFile().toPath());
+        try (OutputStream outputStream = new FileOutputStream(snapshotFile)) {
+            snapshot.write(outputStream);
+        }
+        log.info("Wrote snapshot of {} implementation guide resources to {}", snapshot.getResourceCount(), snapshotFile);
+    }
+}
@@ -0,0 +1,40 @@
+/*
+ * Copyright Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package software.amazon.fwoa;
+
+import lombok.Builder;
+import lombok.Value;
+
+/**
+ * Measurements of one {@link ValidatorLoadGenerator} run: a set of resources validated by a number of concurrent callers for a fixed time.
+ */
+@Builder
+@Value
+public class LoadTestResult {
+    /**
+     * Resource type of the resources replayed, or {@link ValidatorLoadGenerator#ALL_RESOURCE_TYPES} for the whole corpus.
+     */
+    private String resourceType;
+    private int concurrency;
+    private long validations;
+    private long elapsedNanos;
+    private double p50Millis;
+    private double p95Millis;
+    private double p99Millis;
+    private double maxMillis;
+
+    /**
+     * Sum of the peak usage of each heap memory pool during the run. The pools may peak at different times, so it is an upper bound.
+     */
+    private long heapPeakBytes;
+
+    private long gcCount;
+    private long gcMillis;
+
+    public double getThroughputPerSecond() {
+        return elapsedNanos == 0 ? 0 : validations * 1e9 / elapsedNanos;
+    }
+}
@@ -0,0 +1,68 @@
+/*
+ * Copyright Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package software.amazon.fwoa;
+
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Validates an NDJSON file offline, for example a bulk export before it is imported:
+ * <pre>
+ * mvn test-compile exec:exec -Dexec.executable=java -Dexec.classpathScope=test
+ *     -Dexec.args="-cp %classpath software.amazon.fwoa.NdjsonValidatorCli [--fhirVersion &lt;version&gt;] [--failuresOnly]
+ *     [--maxErrors &lt;n&gt;] [--structuralPrecheck] [--groupMessages] [--maxMessages &lt;n&gt;] &lt;input.ndjson|-&gt; &lt;output.ndjson&gt;"
+ * </pre>
+ * The input is read from stdin when it is "-". One response is written per line of the input, or per failed line with --failuresOnly.
+ * The other options are the {@link ValidationOptions} applied to each line.
+ * The implementation guides of the implementationGuides folder are used. The exit code is 1 when at least one line failed validation,
+ * it runs in its own JVM with exec:exec since exec:java would exit Maven itself.
+ */
+@Slf4j
+public class NdjsonValidatorCli {
+    private static final String USAGE = "Usage: NdjsonValidatorCli [--fhirVersion <version>] [--failuresOnly] [--maxErrors <n>] "
+        + "[--structuralPrecheck] [--groupMessages] [--maxMessages <n>] <input.ndjson|-> <output.ndjson>";
+
+    public static void main(String[] args) throws IOException {
+        String fhirVersion = Validator.FHIR_R4;
+        boolean failuresOnly = false;
+        ValidationOptions.ValidationOptionsBuilder options = ValidationOptions.builder();
+        int i = 0;
+        for (; i < args.length && args[i].startsWith("--"); i++) {
+            if ("--fhirVersion".equals(args[i]) && i + 1 < args.length) {
+                fhirVersion = args[++i];
+            } else if ("--failuresOnly".equals(args[i])) {
+                failuresOnly = true;
+            } else if ("--maxErrors".equals(args[i]) && i + 1 < args.length) {
+                options.maxErrors(Integer.parseInt(args[++i]));
+            } else if ("--structuralPrecheck".equals(args[i])) {
+                options.structuralPrecheck(true);
+            } else if ("--groupMessages".equals(args[i])) {
+                options.groupMessages(true);
+            } else if ("--maxMessages".equals(args[i]) && i + 1 < args.length) {
+                options.maxMessages(Integer.parseInt(args[++i]));
+            } else {
+                throw new IllegalArgumentException(USAGE);
+            }
+        }
+        if (args.length - i != 2) {
+            throw new IllegalArgumentException(USAGE);
+        }
+
+        Validator validator = new Validator(fhirVersion);
+        NdjsonValidationSummary summary;
+        try (InputStream input = "-".equals(args[i]) ? System.in : new FileInputStream(args[i]);
+             OutputStream output = new FileOutputStream(args[i + 1])) {
+            summary = validator.validateNdjson(input, output, failuresOnly, options.build());
+        }
+        log.info("Validated {} resources, {} failed", summary.getValidatedLines(), summary.getFailedLines());
+        System.exit(summary.getFailedLines() == 0 ? 0 : 1);
+    }
+}
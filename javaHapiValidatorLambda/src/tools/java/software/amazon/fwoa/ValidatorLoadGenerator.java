@@ -0,0 +1,269 @@
+/*
+ * Copyright Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package software.amazon.fwoa;
+
+import java.io.IOException;
+import java.io.PrintStream;
+import java.io.Writer;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import com.google.common.primitives.ImmutableLongArray;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Replays a corpus of FHIR resources against one in-process {@link Validator} with an increasing number of concurrent callers,
+ * to see how a validator scales with threads and which resource types are expensive, e.g. to size the Lambda memory and concurrency:
+ * <pre>
+ * mvn test-compile exec:java -Dexec.classpathScope=test -Dexec.mainClass=software.amazon.fwoa.ValidatorLoadGenerator
+ *     -Dexec.args="[--fhirVersion &lt;version&gt;] [--implementationGuides &lt;folder&gt;] [--concurrency 1,2,4] [--durationSeconds 10]
+ *     [--warmUpSeconds 10] [--csv &lt;results.csv&gt;] &lt;corpus directory|file.json|file.ndjson&gt;"
+ * </pre>
+ * The corpus is a directory of *.json (one resource) and *.ndjson (one resource per line) files, or a single such file.
+ * After a warm-up with the whole corpus, each concurrency level replays the whole corpus and then the resources of each resource type alone,
+ * and reports the throughput, the latency percentiles, the heap high-water mark and the GC activity of the run.
+ * The JIT keeps improving the validation for a few minutes, use a warm-up long enough for the results to be repeatable,
+ * e.g. by running the same concurrency levels twice and checking that the second round matches the first.
+ */
+@Slf4j
+public class ValidatorLoadGenerator {
+    public static final String ALL_RESOURCE_TYPES = "All";
+
+    private static final String USAGE = "Usage: ValidatorLoadGenerator [--fhirVersion <version>] [--implementationGuides <folder>] "
+        + "[--concurrency 1,2,4] [--durationSeconds 10] [--warmUpSeconds 10] [--csv <results.csv>] <corpus directory|file.json|file.ndjson>";
+    private static final String CSV_HEADER = "resourceType,concurrency,validations,throughputPerSecond,p50Millis,p95Millis,p99Millis,maxMillis,"
+        + "heapPeakBytes,gcCount,gcMillis";
+
+    private final Validator validator;
+
+    ValidatorLoadGenerator(Validator validator) {
+        this.validator = validator;
+    }
+
+    public static void main(String[] args) throws IOException {
+        String fhirVersion = Validator.FHIR_R4;
+        String implementationGuidesFolder = Validator.DEFAULT_IMPLEMENTATION_GUIDES_FOLDER;
+        int[] concurrencyLevels = {1, 2, 4};
+        long durationSeconds = 10;
+        long warmUpSeconds = 10;
+        String csv = null;
+        int i = 0;
+        for (; i < args.length && args[i].startsWith("--"); i++) {
+            if (i + 1 >= args.length) {
+                throw new IllegalArgumentException(USAGE);
+            }
+            String value = args[++i];
+            switch (args[i - 1]) {
+                case "--fhirVersion":
+                    fhirVersion = value;
+                    break;
+                case "--implementationGuides":
+                    implementationGuidesFolder = value;
+                    break;
+                case "--concurrency":
+                    concurrencyLevels = Arrays.stream(value.split(",")).mapToInt(Integer::parseInt).toArray();
+                    break;
+                case "--durationSeconds":
+                    durationSeconds = Long.parseLong(value);
+                    break;
+                case "--warmUpSeconds":
+                    warmUpSeconds = Long.parseLong(value);
+                    break;
+                case "--csv":
+                    csv = value;
+                    break;
+                default:
+                    throw new IllegalArgumentException(USAGE);
+            }
+        }
+        if (args.length - i != 1) {
+            throw new IllegalArgumentException(USAGE);
+        }
+
+        List<String> corpus = readCorpus(Paths.get(args[i]));
+        Map<String, List<String>> corpusByResourceType = byResourceType(corpus);
+        log.info("Loaded {} resources of {} resource types", corpus.size(), corpusByResourceType.size());
+
+        ValidatorLoadGenerator loadTest = new ValidatorLoadGenerator(new Validator(fhirVersion, implementationGuidesFolder));
+        int maxConcurrency = Arrays.stream(concurrencyLevels).max().orElse(1);
+        log.info("Warming up for {} s with {} callers", warmUpSeconds, maxConcurrency);
+        loadTest.run(ALL_RESOURCE_TYPES, corpus, maxConcurrency, TimeUnit.SECONDS.toNanos(warmUpSeconds));
+
+        List<LoadTestResult> results = new ArrayList<>();
+        PrintStream out = System.out;
+        out.printf("%-24s %5s %10s %10s %9s %9s %9s %9s %10s %6s %8s%n",
+            "resourceType", "conc", "validations", "ops/s", "p50 ms", "p95 ms", "p99 ms", "max ms", "heap MB", "gcs", "gc ms");
+        for (int concurrency : concurrencyLevels) {
+            List<String> labels = new ArrayList<>();
+            labels.add(ALL_RESOURCE_TYPES);
+            labels.addAll(corpusByResourceType.keySet());
+            for (String label : labels) {
+                List<String> resources = ALL_RESOURCE_TYPES.equals(label) ? corpus : corpusByResourceType.get(label);
+                LoadTestResult result = loadTest.run(label, resources, concurrency, TimeUnit.SECONDS.toNanos(durationSeconds));
+                results.add(result);
+                out.printf("%-24s %5d %10d %10.1f %9.1f %9.1f %9.1f %9.1f %10.1f %6d %8d%n",
+                    result.getResourceType(), result.getConcurrency(), result.getValidations(), result.getThroughputPerSecond(),
+                    result.getP50Millis(), result.getP95Millis(), result.getP99Millis(), result.getMaxMillis(),
+                    result.getHeapPeakBytes() / 1024.0 / 1024.0, result.getGcCount(), result.getGcMillis());
+            }
+        }
+
+        if (csv != null) {
+            try (Writer writer = Files.newBufferedWriter(Paths.get(csv), StandardCharsets.UTF_8)) {
+                writer.write(CSV_HEADER + "\n");
+                for (LoadTestResult result : results) {
+                    writer.write(String.format("%s,%d,%d,%.2f,%.3f,%.3f,%.3f,%.3f,%d,%d,%d%n",
+                        result.getResourceType(), result.getConcurrency(), result.getValidations(), result.getThroughputPerSecond(),
+                        result.getP50Millis(), result.getP95Millis(), result.getP99Millis(), result.getMaxMillis(),
+                        result.getHeapPeakBytes(), result.getGcCount(), result.getGcMillis()));
+                }
+            }
+        }
+        loadTest.validator.close();
+    }
+
+    /**
+     * Validates the resources in a loop with the given number of callers until the duration is over.
+     * Each caller starts at a different offset of the resources so that they do not validate the same resource at the same time.
+     */
+    LoadTestResult run(String resourceType, List<String> resources, int concurrency, long durationNanos) {
+        List<MemoryPoolMXBean> heapPools = ManagementFactory.getMemoryPoolMXBeans().stream()
+            .filter(pool -> pool.getType() == MemoryType.HEAP)
+            .collect(Collectors.toList());
+        List<GarbageCollectorMXBean> collectors = ManagementFactory.getGarbageCollectorMXBeans();
+
+        // start every run from the same heap state
+        System.gc();
+        heapPools.forEach(MemoryPoolMXBean::resetPeakUsage);
+        long gcCountBefore = collectors.stream().mapToLong(GarbageCollectorMXBean::getCollectionCount).sum();
+        long gcMillisBefore = collectors.stream().mapToLong(GarbageCollectorMXBean::getCollectionTime).sum();
+
+        ExecutorService executor = Executors.newFixedThreadPool(concurrency, new ThreadFactoryBuilder()
+            .setNameFormat("load-test-%d")
+            .setDaemon(true)
+            .build());
+        CountDownLatch start = new CountDownLatch(1);
+        long[] deadline = new long[1];
+        long begin;
+        long[] latencies;
+        try {
+            List<Future<ImmutableLongArray>> callers = new ArrayList<>(concurrency);
+            for (int caller = 0; caller < concurrency; caller++) {
+                int offset = caller * resources.size() / concurrency;
+                callers.add(executor.submit(() -> {
+                    start.await();
+                    ImmutableLongArray.Builder callerLatencies = ImmutableLongArray.builder();
+                    for (int next = offset; System.nanoTime() < deadline[0]; next++) {
+                        String resource = resources.get(next % resources.size());
+                        long validationStart = System.nanoTime();
+                        validator.validate(resource);
+                        callerLatencies.add(System.nanoTime() - validationStart);
+                    }
+                    return callerLatencies.build();
+                }));
+            }
+
+            begin = System.nanoTime();
+            // published to the callers by the latch
+            deadline[0] = begin + durationNanos;
+            start.countDown();
+
+            ImmutableLongArray.Builder allLatencies = ImmutableLongArray.builder();
+            for (Future<ImmutableLongArray> caller : callers) {
+                allLatencies.addAll(caller.get());
+            }
+            latencies = allLatencies.build().toArray();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException(e);
+        } catch (ExecutionException e) {
+            throw new RuntimeException(e.getCause());
+        } finally {
+            executor.shutdownNow();
+        }
+        long elapsedNanos = System.nanoTime() - begin;
+        Arrays.sort(latencies);
+
+        return LoadTestResult.builder()
+            .resourceType(resourceType)
+            .concurrency(concurrency)
+            .validations(latencies.length)
+            .elapsedNanos(elapsedNanos)
+            .p50Millis(percentileMillis(latencies, 0.50))
+            .p95Millis(percentileMillis(latencies, 0.95))
+            .p99Millis(percentileMillis(latencies, 0.99))
+            .maxMillis(percentileMillis(latencies, 1))
+            .heapPeakBytes(heapPools.stream().mapToLong(pool -> pool.getPeakUsage().getUsed()).sum())
+            .gcCount(collectors.stream().mapToLong(GarbageCollectorMXBean::getCollectionCount).sum() - gcCountBefore)
+            .gcMillis(collectors.stream().mapToLong(GarbageCollectorMXBean::getCollectionTime).sum() - gcMillisBefore)
+            .build();
+    }
+
+    /**
+     * Nearest-rank percentile of sorted latencies.
+     */
+    static double percentileMillis(long[] sortedLatencies, double percentile) {
+        if (sortedLatencies.length == 0) {
+            return 0;
+        }
+        int rank = (int) Math.ceil(percentile * sortedLatencies.length);
+        return sortedLatencies[Math.max(rank, 1) - 1] / 1e6;
+    }
+
+    static List<String> readCorpus(Path path) throws IOException {
+        List<String> corpus = new ArrayList<>();
+        List<Path> files;
+        try (Stream<Path> walk = Files.walk(path)) {
+            files = walk.filter(Files::isRegularFile).sorted().collect(Collectors.toList());
+        }
+        for (Path file : files) {
+            String fileName = file.getFileName().toString();
+            if (fileName.endsWith(".ndjson")) {
+                for (String line : Files.readAllLines(file, StandardCharsets.UTF_8)) {
+                    if (!line.trim().isEmpty()) {
+                        corpus.add(line);
+                    }
+                }
+            } else if (fileName.endsWith(".json")) {
+                corpus.add(new String(Files.readAllBytes(file), StandardCharsets.UTF_8));
+            }
+        }
+        if (corpus.isEmpty()) {
+            throw new IllegalArgumentException("No *.json or *.ndjson resources found in " + path);
+        }
+        return corpus;
+    }
+
+    static Map<String, List<String>> byResourceType(List<String> corpus) {
+        Map<String, List<String>> corpusByResourceType = new TreeMap<>();
+        for (String resource : corpus) {
+            String resourceType = ResourceTypeSniffer.sniff(resource).orElse(ValidationMetrics.UNKNOWN_RESOURCE_TYPE);
+            corpusByResourceType.computeIfAbsent(resourceType, k -> new ArrayList<>()).add(resource);
+        }
+        return corpusByResourceType;
+    }
+}